@@ -0,0 +1,78 @@
+package org.liamwang.yamlconfig;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads config values through {@link YamlConfigEntry} with and without a concurrent full reload. The number of reader
+ * threads in the readDuringReload group can be changed at run time with JMH's -tg option, e.g. -tg 8,1.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigReadBenchmark {
+
+    @Param({"1000"})
+    public int keyCount;
+
+    private SyntheticDeployTree tree;
+    private YamlConfigManager manager;
+    private YamlConfigEntry[] entries;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tree = new SyntheticDeployTree(keyCount, 10);
+        manager = YamlConfigManager.builder().rootFolder(tree.getRootFolder()).watch(false).build();
+        entries = tree.getPaths().stream().map(path -> new YamlConfigEntry(path, manager)).toArray(YamlConfigEntry[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.shutdown();
+        tree.delete();
+    }
+
+    @State(Scope.Thread)
+    public static class ReaderIndex {
+
+        int next;
+    }
+
+    @Benchmark
+    @Group("readUncontended")
+    public double readUncontended(ReaderIndex index) {
+        return entries[index.next++ % entries.length].getAsDouble(0);
+    }
+
+    @Benchmark
+    @Group("readDuringReload")
+    @GroupThreads(4)
+    public double read(ReaderIndex index) {
+        return entries[index.next++ % entries.length].getAsDouble(0);
+    }
+
+    @Benchmark
+    @Group("readDuringReload")
+    @GroupThreads(1)
+    public void reload() {
+        manager.reparseAll();
+    }
+}
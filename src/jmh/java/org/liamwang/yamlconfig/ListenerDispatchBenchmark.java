@@ -0,0 +1,87 @@
+package org.liamwang.yamlconfig;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Diffs two generations and dispatches to the registered entry and prefix listeners, either with every key changed or
+ * with one key changed in a generation derived from the other, which shares every other trie node with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    @Param({"1000"})
+    public int keyCount;
+
+    @Param({"10", "1000", "10000"})
+    public int listenerCount;
+
+    private SyntheticDeployTree tree;
+    private YamlConfigManager manager;
+    private ConfigSnapshot first;
+    private ConfigSnapshot second;
+    private ConfigSnapshot derived;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) throws IOException {
+        tree = new SyntheticDeployTree(keyCount, 10);
+        manager = YamlConfigManager.builder().rootFolder(tree.getRootFolder()).watch(false).build();
+        List<String> paths = tree.getPaths();
+        for (int i = 0; i < listenerCount; i++) {
+            String path = paths.get(i % paths.size());
+            if (i % 10 == 0) {
+                manager.registerPrefixListener(path.substring(0, path.lastIndexOf(YamlConfigManager.PATH_SEPARATOR)), () -> blackhole.consume(path));
+            } else {
+                manager.registerPathListener(path, () -> blackhole.consume(path));
+            }
+        }
+        Map<String, Object> firstValues = new LinkedHashMap<>();
+        Map<String, Object> secondValues = new LinkedHashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            firstValues.put(paths.get(i), (double) i);
+            secondValues.put(paths.get(i), i + 0.5);
+        }
+        first = new ConfigSnapshot(1, firstValues);
+        second = new ConfigSnapshot(2, secondValues);
+        derived = first.withChanges(3, Collections.singletonMap(paths.get(0), -1.0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.shutdown();
+        tree.delete();
+    }
+
+    @Benchmark
+    public void dispatchAllChanged() {
+        manager.executeUpdates(first, second);
+    }
+
+    @Benchmark
+    public void dispatchOneChanged() {
+        manager.executeUpdates(first, derived);
+    }
+}
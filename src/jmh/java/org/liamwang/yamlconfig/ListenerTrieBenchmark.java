@@ -0,0 +1,67 @@
+package org.liamwang.yamlconfig;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolves the listeners for a changed path with tens of thousands of entry and prefix listeners registered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerTrieBenchmark {
+
+    @Param({"10000", "50000"})
+    public int listenerCount;
+
+    private ListenerTrie trie;
+    private List<String> changedPaths;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        trie = new ListenerTrie();
+        changedPaths = new ArrayList<>();
+        ConfigListener listener = new ConfigListener("", true, () -> {
+        }, null, new ConfigMetrics());
+        int subsystems = 50;
+        int groups = 20;
+        int keysPerGroup = Math.max(1, listenerCount / (subsystems * groups));
+        for (int s = 0; s < subsystems; s++) {
+            for (int g = 0; g < groups; g++) {
+                String prefix = "Subsystem" + s + "/Group" + g;
+                trie.addPrefixListener(prefix, listener);
+                for (int k = 0; k < keysPerGroup; k++) {
+                    String path = prefix + "/Key" + k;
+                    trie.addEntryListener(path, listener);
+                    changedPaths.add(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Set<ConfigListener> collectListeners() {
+        Set<ConfigListener> listeners = new LinkedHashSet<>();
+        trie.collectListeners(changedPaths.get(next++ % changedPaths.size()), listeners);
+        return listeners;
+    }
+}
@@ -0,0 +1,50 @@
+package org.liamwang.yamlconfig;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizePathBenchmark {
+
+    @Param({"DriveTrain/VelocityPID/P", "/DriveTrain//VelocityPID/P/////", "P"})
+    public String path;
+
+    @Benchmark
+    public String normalizePathStandard() {
+        return YamlConfigManager.normalizePathStandard(path);
+    }
+
+    @Benchmark
+    public String canonicalId() {
+        return PathNormalizer.canonicalId(path);
+    }
+
+    /**
+     * The previous regex-based normalization, as a baseline.
+     */
+    @Benchmark
+    public String regexNormalize() {
+        String normalized = path.replaceAll(YamlConfigManager.PATH_SEPARATOR + "{2,}", String.valueOf(YamlConfigManager.PATH_SEPARATOR));
+        if (!normalized.isEmpty() && normalized.charAt(0) == YamlConfigManager.PATH_SEPARATOR) {
+            normalized = normalized.substring(1);
+        }
+        if (!normalized.isEmpty() && normalized.charAt(normalized.length() - 1) == YamlConfigManager.PATH_SEPARATOR) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+}
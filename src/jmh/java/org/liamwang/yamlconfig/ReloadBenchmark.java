@@ -0,0 +1,71 @@
+package org.liamwang.yamlconfig;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full and incremental reloads of synthetic deploy trees. The incremental reload rewrites one of ten primary files
+ * before each reload, so its score includes writing that file. Full reloads parse the ten files serially or in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReloadBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int keyCount;
+
+    @Param({"1", "4"})
+    public int parseParallelism;
+
+    private SyntheticDeployTree tree;
+    private YamlConfigManager manager;
+    private Set<Path> changedFiles;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tree = new SyntheticDeployTree(keyCount, 10);
+        manager = YamlConfigManager.builder().rootFolder(tree.getRootFolder()).watch(false).build();
+        manager.setParseParallelism(parseParallelism);
+        changedFiles = Collections.singleton(tree.getFiles().get(0).toAbsolutePath().normalize());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.shutdown();
+        tree.delete();
+    }
+
+    @Benchmark
+    public ConfigSnapshot fullReload() {
+        manager.reparseAll();
+        return manager.getSnapshot();
+    }
+
+    @Benchmark
+    public ConfigSnapshot incrementalReload() throws IOException {
+        tree.rewrite(0, ++offset);
+        manager.reload(changedFiles);
+        return manager.getSnapshot();
+    }
+}
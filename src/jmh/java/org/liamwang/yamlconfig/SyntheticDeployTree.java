@@ -0,0 +1,93 @@
+package org.liamwang.yamlconfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Generates a deploy folder of primary files plus one robot override file, with keys nested as Subsystem/Group/Key.
+ */
+final class SyntheticDeployTree {
+
+    private static final int KEYS_PER_GROUP = 10;
+
+    private final Path rootFolder;
+    private final int keysPerFile;
+    private final List<Path> files = new ArrayList<>();
+    private final List<String> paths = new ArrayList<>();
+
+    /**
+     * @param keyCount total number of keys across all primary files
+     * @param fileCount number of primary files to spread the keys over
+     */
+    SyntheticDeployTree(int keyCount, int fileCount) throws IOException {
+        rootFolder = Files.createTempDirectory("yaml-config-bench");
+        keysPerFile = Math.max(1, keyCount / fileCount);
+        StringBuilder meta = new StringBuilder("primary:\n");
+        for (int f = 0; f < fileCount; f++) {
+            String fileName = "subsystem" + f + ".yaml";
+            meta.append("- ").append(fileName).append('\n');
+            files.add(writeFile(fileName, render(f, 0)));
+            for (int k = 0; k < keysPerFile; k++) {
+                paths.add("Subsystem" + f + "/Group" + k / KEYS_PER_GROUP + "/Key" + k);
+            }
+        }
+        String overrideName = "override.yaml";
+        meta.append("override:\n  ").append(RobotIdentifier.getRobotName()).append(":\n  - ").append(overrideName).append('\n');
+        files.add(writeFile(overrideName, "Subsystem0:\n  Group0:\n    Key0: -1\n"));
+        writeFile("config-meta.yaml", meta.toString());
+    }
+
+    private Path writeFile(String fileName, String content) throws IOException {
+        Path file = rootFolder.resolve(fileName);
+        Files.write(file, content.getBytes());
+        return file;
+    }
+
+    /**
+     * @param offset added to every value, so rendering with another offset changes every key in the file
+     * @return YAML content of a primary file
+     */
+    String render(int fileIndex, double offset) {
+        StringBuilder yaml = new StringBuilder("Subsystem").append(fileIndex).append(":\n");
+        for (int k = 0; k < keysPerFile; k++) {
+            if (k % KEYS_PER_GROUP == 0) {
+                yaml.append("  Group").append(k / KEYS_PER_GROUP).append(":\n");
+            }
+            yaml.append("    Key").append(k).append(": ").append(k + offset + 0.5).append('\n');
+        }
+        return yaml.toString();
+    }
+
+    /**
+     * Rewrites a primary file with every value shifted by the offset.
+     */
+    void rewrite(int fileIndex, double offset) throws IOException {
+        Files.write(files.get(fileIndex), render(fileIndex, offset).getBytes());
+    }
+
+    Path getRootFolder() {
+        return rootFolder;
+    }
+
+    List<Path> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return config paths of the keys in the primary files
+     */
+    List<String> getPaths() {
+        return paths;
+    }
+
+    void delete() throws IOException {
+        try (Stream<Path> walk = Files.walk(rootFolder)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.liamwang.yamlconfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.log4j.Logger;
+
+/**
+ * Publishes a {@link ConfigChangeBatch} per generation to Flow subscribers. Publishing never blocks the reload thread:
+ * each subscription queues at most {@link #MAX_QUEUED_BATCHES} batches and merges further ones into the last queued
+ * batch, so a subscriber that requests slowly receives fewer, larger batches rather than holding up reloads. A merged
+ * batch whose values all changed back is dropped. Signals to a subscriber run one at a time on its executor.
+ */
+final class ChangeStream {
+
+    private static final Logger logger = Logger.getLogger(ChangeStream.class);
+
+    static final int MAX_QUEUED_BATCHES = 16;
+
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * @param prefix normalized prefix to filter changes by, "" for every change
+     * @param executor executor to signal the subscriber on
+     */
+    void subscribe(String prefix, Executor executor, Flow.Subscriber<? super ConfigChangeBatch> subscriber) {
+        ChangeSubscription subscription = new ChangeSubscription(prefix, executor, subscriber);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete(); // Closed while subscribing
+        }
+        subscription.schedule();
+    }
+
+    /**
+     * Queues the changes between two generations for every subscriber whose prefix they touch.
+     */
+    void publish(ConfigSnapshot oldSnapshot, ConfigSnapshot newSnapshot, Set<String> changedPaths) {
+        List<String> paths = new ArrayList<>(changedPaths);
+        Collections.sort(paths);
+        List<ConfigChangeBatch.Change> changes = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            changes.add(new ConfigChangeBatch.Change(path, oldSnapshot.get(path), newSnapshot.get(path)));
+        }
+        ConfigChangeBatch batch = new ConfigChangeBatch(newSnapshot.getGeneration(), changes);
+        subscriptions.forEach(subscription -> subscription.offer(batch));
+    }
+
+    /**
+     * Completes every subscription once it has delivered the batches already queued.
+     */
+    void close() {
+        closed = true;
+        subscriptions.forEach(ChangeSubscription::complete);
+    }
+
+    private final class ChangeSubscription implements Flow.Subscription {
+
+        private final String prefix;
+        private final Executor executor;
+        private final Flow.Subscriber<? super ConfigChangeBatch> subscriber;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final ArrayDeque<ConfigChangeBatch> queue = new ArrayDeque<>(); // Guarded by this
+        private long demand; // Guarded by this
+        private boolean subscribed; // Guarded by this, whether onSubscribe was signalled
+        private boolean completing; // Guarded by this
+        private boolean cancelled; // Guarded by this
+        private Throwable error; // Guarded by this, a request violating the spec
+
+        private ChangeSubscription(String prefix, Executor executor, Flow.Subscriber<? super ConfigChangeBatch> subscriber) {
+            this.prefix = prefix;
+            this.executor = executor;
+            this.subscriber = subscriber;
+        }
+
+        void offer(ConfigChangeBatch batch) {
+            ConfigChangeBatch filtered = batch.filter(prefix);
+            if (filtered == null) {
+                return;
+            }
+            synchronized (this) {
+                if (cancelled || completing) {
+                    return;
+                }
+                if (queue.size() < MAX_QUEUED_BATCHES) {
+                    queue.add(filtered);
+                } else { // Subscriber is behind, coalesce instead of growing
+                    ConfigChangeBatch merged = queue.pollLast().merge(filtered);
+                    if (!merged.getChanges().isEmpty()) {
+                        queue.add(merged);
+                    } // Otherwise every path changed back, so there is nothing to deliver
+                }
+                if (demand == 0) {
+                    return;
+                }
+            }
+            schedule();
+        }
+
+        synchronized void complete() {
+            completing = true;
+            if (subscribed) {
+                schedule();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Requested " + n + " change batches, must be positive");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // Saturate, Long.MAX_VALUE means unbounded
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                queue.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return; // Already queued or running, it rechecks the queue before finishing
+            }
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                logger.error("Config change subscriber could not be signalled: " + e.toString());
+            }
+        }
+
+        /**
+         * Signals the subscriber on its executor, one signal at a time and outside the lock.
+         */
+        private void drain() {
+            try {
+                Runnable signal;
+                while ((signal = nextSignal()) != null) {
+                    signal.run();
+                }
+            } catch (RuntimeException e) {
+                logger.error("Config change subscriber threw an exception, cancelling it: " + e.toString());
+                cancel();
+            } finally {
+                scheduled.set(false);
+            }
+            if (hasPendingSignal()) {
+                schedule(); // Requested or offered after the last check
+            }
+        }
+
+        /**
+         * @return the next signal to send the subscriber, or null if it has to wait for demand or a batch
+         */
+        private synchronized Runnable nextSignal() {
+            if (cancelled) {
+                return null;
+            }
+            if (!subscribed) {
+                subscribed = true;
+                return () -> subscriber.onSubscribe(this);
+            }
+            if (error != null) {
+                Throwable failure = error;
+                terminate();
+                return () -> subscriber.onError(failure);
+            }
+            if (demand > 0 && !queue.isEmpty()) {
+                ConfigChangeBatch batch = queue.poll();
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                return () -> subscriber.onNext(batch);
+            }
+            if (completing && queue.isEmpty()) {
+                terminate();
+                return subscriber::onComplete;
+            }
+            return null;
+        }
+
+        private void terminate() {
+            cancelled = true; // No further signals
+            subscriptions.remove(this);
+        }
+
+        private synchronized boolean hasPendingSignal() {
+            return !cancelled && (!subscribed || error != null || (demand > 0 && !queue.isEmpty()) || (completing && queue.isEmpty()));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.liamwang.yamlconfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The values that changed in one config generation, as published by
+ * {@link YamlConfigManager#getChangePublisher(String)}. A subscriber that falls behind receives one batch merged from
+ * several generations, holding each path's value before the first of them and after the last.
+ */
+public final class ConfigChangeBatch {
+
+    private final long generation;
+    private final List<Change> changes;
+
+    ConfigChangeBatch(long generation, List<Change> changes) {
+        this.generation = generation;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * @return the generation the new values belong to
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the changed values, sorted by path
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the changes under a normalized prefix, "" for all of them, or null if there are none
+     */
+    ConfigChangeBatch filter(String prefix) {
+        if (prefix.isEmpty()) {
+            return this;
+        }
+        List<Change> filtered = new ArrayList<>();
+        for (Change change : changes) {
+            String path = change.path;
+            if (path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == YamlConfigManager.PATH_SEPARATOR)) {
+                filtered.add(change);
+            }
+        }
+        return filtered.isEmpty() ? null : filtered.size() == changes.size() ? this : new ConfigChangeBatch(generation, filtered);
+    }
+
+    /**
+     * @return a batch going from this batch's old values to a later batch's new values, without paths that changed back
+     */
+    ConfigChangeBatch merge(ConfigChangeBatch later) {
+        Map<String, Change> merged = new TreeMap<>();
+        for (Change change : changes) {
+            merged.put(change.path, change);
+        }
+        for (Change change : later.changes) {
+            Change earlier = merged.get(change.path);
+            merged.put(change.path, earlier == null ? change : new Change(change.path, earlier.oldValue, change.newValue));
+        }
+        merged.values().removeIf(change -> Objects.deepEquals(change.oldValue, change.newValue));
+        return new ConfigChangeBatch(later.generation, new ArrayList<>(merged.values()));
+    }
+
+    @Override
+    public String toString() {
+        return "generation " + generation + ": " + changes;
+    }
+
+    /**
+     * One changed value. Values are boxed the way {@link YamlConfigManager#printConfig()} shows them: numbers, booleans,
+     * strings, double[] for lists and double[][] for tables.
+     */
+    public static final class Change {
+
+        private final String path;
+        private final Object oldValue;
+        private final Object newValue;
+
+        Change(String path, Object oldValue, Object newValue) {
+            this.path = path;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        /**
+         * @return normalized path of the value
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the value before the change, null if the path was added
+         */
+        public Object getOldValue() {
+            return oldValue;
+        }
+
+        /**
+         * @return the value after the change, null if the path was removed
+         */
+        public Object getNewValue() {
+            return newValue;
+        }
+
+        @Override
+        public String toString() {
+            return path + ": " + YamlConfigManager.valueToString(oldValue) + " -> " + YamlConfigManager.valueToString(newValue);
+        }
+    }
+}
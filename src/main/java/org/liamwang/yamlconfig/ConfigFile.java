@@ -0,0 +1,109 @@
+package org.liamwang.yamlconfig;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Cached, flattened contribution of one YAML file to the reduced config, keyed by the file's path, modification time
+ * and content hash. A file whose content hash is unchanged is never re-parsed.
+ */
+final class ConfigFile {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final Path path;
+    private final long lastModified;
+    private final long size;
+    private final byte[] hash;
+    private final Map<String, Object> values; // Maps normalized config paths to values, in file order
+    private final boolean parseError; // Whether the file could not be parsed, its values are then empty
+
+    ConfigFile(Path path, long lastModified, long size, byte[] hash, Map<String, Object> values) {
+        this(path, lastModified, size, hash, values, false);
+    }
+
+    ConfigFile(Path path, long lastModified, long size, byte[] hash, Map<String, Object> values, boolean parseError) {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.size = size;
+        this.hash = hash;
+        this.values = Collections.unmodifiableMap(values);
+        this.parseError = parseError;
+    }
+
+    private ConfigFile(ConfigFile file, long lastModified, long size, byte[] hash) {
+        this.path = file.path;
+        this.lastModified = lastModified;
+        this.size = size;
+        this.hash = hash;
+        this.values = file.values;
+        this.parseError = file.parseError;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    byte[] getHash() {
+        return hash.clone();
+    }
+
+    Map<String, Object> getValues() {
+        return values;
+    }
+
+    /**
+     * @return whether the file could not be parsed, in which case it contributes no values
+     */
+    boolean hasParseError() {
+        return parseError;
+    }
+
+    boolean hasHash(byte[] otherHash) {
+        return MessageDigest.isEqual(hash, otherHash);
+    }
+
+    /**
+     * @return a copy of this file with new stat info sharing the same values map, for files whose content is unchanged
+     */
+    ConfigFile withStat(long lastModified, long size) {
+        return new ConfigFile(this, lastModified, size, hash);
+    }
+
+    /**
+     * @return a copy of this file with the content the values were written as, sharing the same values map
+     */
+    ConfigFile withContent(long lastModified, long size, byte[] hash) {
+        return new ConfigFile(this, lastModified, size, hash.clone());
+    }
+
+    /**
+     * @return a copy of this file with new values that have not been written yet, keeping the stat and hash of the
+     * content still on disk, so re-reading that content does not replace the new values
+     */
+    ConfigFile withValues(Map<String, Object> values) {
+        return new ConfigFile(path, lastModified, size, hash, values);
+    }
+
+    /**
+     * @return a digest for content hashes, see {@link ConfigFileReader#hash()}
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " not available", e);
+        }
+    }
+}
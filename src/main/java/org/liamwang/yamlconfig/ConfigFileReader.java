@@ -0,0 +1,174 @@
+package org.liamwang.yamlconfig;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Reads config files through a FileChannel, hashes them and decodes them for parsing without copying them into new
+ * arrays. Small files are read into a buffer reused across files, larger ones are memory-mapped. The decoded characters
+ * of small files also go into a reused buffer, so reading one only allocates when it is larger than any read before.
+ * Mapped files are decoded into a buffer of their own that is dropped after use, so a reader kept per thread does not
+ * hold on to the size of the largest file it ever read.
+ *
+ * Not thread safe; use one reader per thread. The buffers are overwritten by the next read. Call {@link #release()}
+ * once the content is decoded, so a reader kept per thread does not keep its last mapped file alive.
+ */
+final class ConfigFileReader {
+
+    private static final int MAP_THRESHOLD = 256 * 1024; // Files larger than this are mapped instead of copied
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int MAX_RETAINED_CHARS = MAP_THRESHOLD; // Enough for any file that is not mapped
+
+    private final MessageDigest digest = ConfigFile.newDigest();
+    private final CharsetDecoder utf8Decoder = newDecoder(StandardCharsets.UTF_8);
+    private final CharsetDecoder utf16beDecoder = newDecoder(StandardCharsets.UTF_16BE);
+    private final CharsetDecoder utf16leDecoder = newDecoder(StandardCharsets.UTF_16LE);
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private CharBuffer chars = CharBuffer.allocate(INITIAL_CAPACITY);
+    private ByteBuffer content = buffer; // Content of the last file read, either the reused buffer or a mapping
+
+    /**
+     * Reads a whole file, replacing the content of the previous one.
+     */
+    void read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // Stays valid after the channel closes
+                return;
+            }
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(Math.max((int) size, buffer.capacity() * 2));
+            }
+            buffer.clear();
+            buffer.limit((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until full or the file got shorter
+            }
+            buffer.flip();
+            content = buffer;
+        }
+    }
+
+    /**
+     * Drops the content of the last file read. A mapped file is unmapped once nothing else references it; characters
+     * already decoded stay valid.
+     */
+    void release() {
+        buffer.clear().limit(0);
+        content = buffer;
+    }
+
+    /**
+     * @return size in bytes of the last file read
+     */
+    long size() {
+        return content.remaining();
+    }
+
+    /**
+     * @return content hash of the last file read, comparable with {@link ConfigFile#getHash()}
+     */
+    byte[] hash() {
+        digest.update(content.duplicate());
+        return digest.digest();
+    }
+
+    /**
+     * Decodes the last file read, detecting UTF-8 and UTF-16 byte order marks the way SnakeYAML's UnicodeReader does.
+     *
+     * @return reader over the decoded characters, valid until the next read
+     */
+    Reader decode() throws CharacterCodingException {
+        return new CharBufferReader(decodeChars());
+    }
+
+    /**
+     * @return the decoded characters of the last file read, valid until the next read
+     * @see #decode()
+     */
+    CharBuffer decodeChars() throws CharacterCodingException {
+        ByteBuffer bytes = content.duplicate();
+        CharsetDecoder decoder = utf8Decoder;
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            bytes.position(bytes.position() + 3);
+        } else if (startsWith(bytes, 0xFE, 0xFF)) {
+            decoder = utf16beDecoder;
+            bytes.position(bytes.position() + 2);
+        } else if (startsWith(bytes, 0xFF, 0xFE)) {
+            decoder = utf16leDecoder;
+            bytes.position(bytes.position() + 2);
+        }
+
+        CharBuffer decoded = chars;
+        if (decoded.capacity() < bytes.remaining()) { // Never more chars than bytes in UTF-8 or UTF-16
+            decoded = CharBuffer.allocate(Math.max(bytes.remaining(), chars.capacity() * 2));
+            if (decoded.capacity() <= MAX_RETAINED_CHARS) {
+                chars = decoded;
+            }
+        }
+        decoded.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(bytes, decoded, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(decoded);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        decoded.flip();
+        return decoded;
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, int... prefix) {
+        if (bytes.remaining() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes.get(bytes.position() + i) & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    static final class CharBufferReader extends Reader {
+
+        private final CharBuffer chars;
+
+        CharBufferReader(CharBuffer chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (!chars.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, chars.remaining());
+            chars.get(cbuf, off, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.liamwang.yamlconfig;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring of the most recently published generations. Snapshots are immutable, so the ring holds the published
+ * instances themselves rather than copies, and successive generations share every value that did not change between
+ * them. Generations are consecutive, so each one has a fixed slot in the ring and lookups never take a lock.
+ */
+final class ConfigHistory {
+
+    private final AtomicReferenceArray<ConfigSnapshot> generations;
+
+    /**
+     * @param capacity number of generations to keep, including the current one
+     */
+    ConfigHistory(int capacity) {
+        this.generations = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Records a newly published generation, evicting the oldest one if the ring is full.
+     */
+    void record(ConfigSnapshot snapshot) {
+        generations.set(indexOf(snapshot.getGeneration()), snapshot);
+    }
+
+    /**
+     * @return the snapshot of the generation, or null if it was never published or has been evicted
+     */
+    ConfigSnapshot get(long generation) {
+        if (generation < 0) {
+            return null;
+        }
+        ConfigSnapshot snapshot = generations.get(indexOf(generation));
+        return snapshot != null && snapshot.getGeneration() == generation ? snapshot : null;
+    }
+
+    int capacity() {
+        return generations.length();
+    }
+
+    private int indexOf(long generation) {
+        return (int) (generation % generations.length());
+    }
+}
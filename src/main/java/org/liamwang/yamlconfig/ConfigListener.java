@@ -0,0 +1,117 @@
+package org.liamwang.yamlconfig;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.log4j.Logger;
+
+/**
+ * A registered listener and how it is run. Inline listeners run on the reload thread. Listeners with an executor are
+ * queued at most once: generations published while a run is pending or in progress are coalesced, so a listener that
+ * falls behind runs once more for the latest generation instead of once per reload.
+ */
+final class ConfigListener {
+
+    private static final Logger logger = Logger.getLogger(ConfigListener.class);
+
+    private static final long NO_GENERATION = -1;
+    private static final long SLOW_LISTENER_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final String path;
+    private final boolean prefix;
+    private final Runnable callback;
+    private final Executor executor; // null to run inline on the reload thread
+    private final ConfigMetrics metrics;
+
+    private final AtomicLong pendingGeneration = new AtomicLong(NO_GENERATION);
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile long pendingPublishedNanos; // When the pending generation was published
+
+    private final LongAdder runCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private volatile long lastNanos;
+    private volatile long lastGeneration = NO_GENERATION;
+
+    /**
+     * @param path normalized path the listener is registered at
+     * @param prefix whether the listener watches the whole subtree rather than the exact path
+     * @param executor executor to run the callback on, null to run it inline on the reload thread
+     * @param metrics metrics to record dispatch latency and run time into
+     */
+    ConfigListener(String path, boolean prefix, Runnable callback, Executor executor, ConfigMetrics metrics) {
+        this.path = path;
+        this.prefix = prefix;
+        this.callback = callback;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the listener for a new generation, or queues it on its executor.
+     *
+     * @param publishedNanos {@link System#nanoTime()} when the generation was published
+     */
+    void dispatch(long generation, long publishedNanos) {
+        if (executor == null) {
+            invoke(generation, publishedNanos);
+            return;
+        }
+        pendingPublishedNanos = publishedNanos;
+        if (pendingGeneration.getAndSet(generation) != NO_GENERATION) {
+            coalescedCount.increment(); // The queued run will see this generation instead
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return; // Already queued or running, it picks up the pending generation before finishing
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            logger.error("Config listener at " + path + " could not be queued: " + e.toString());
+        }
+    }
+
+    private void drain() {
+        long generation = pendingGeneration.getAndSet(NO_GENERATION);
+        if (generation != NO_GENERATION) {
+            invoke(generation, pendingPublishedNanos);
+        }
+        scheduled.set(false);
+        if (pendingGeneration.get() != NO_GENERATION) {
+            schedule(); // A generation arrived after the run started
+        }
+    }
+
+    private void invoke(long generation, long publishedNanos) {
+        long start = System.nanoTime();
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            logger.error("Config listener at " + path + " threw an exception: " + e.toString());
+        }
+        long elapsed = System.nanoTime() - start;
+        runCount.increment();
+        totalNanos.add(elapsed);
+        maxNanos.accumulateAndGet(elapsed, Math::max);
+        lastNanos = elapsed;
+        lastGeneration = generation;
+        metrics.recordListenerRun(start - publishedNanos, elapsed);
+        if (elapsed > SLOW_LISTENER_NANOS) {
+            logger.warn("Config listener at " + path + " took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+        }
+    }
+
+    ListenerStats getStats() {
+        return new ListenerStats(path, prefix, executor != null, runCount.sum(), coalescedCount.sum(), totalNanos.sum(),
+            maxNanos.get(), lastNanos, lastGeneration);
+    }
+}
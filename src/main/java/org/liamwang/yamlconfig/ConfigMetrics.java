@@ -0,0 +1,150 @@
+package org.liamwang.yamlconfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings of one config manager. Recording never takes a lock: reload timings are written by the reload
+ * thread only, listener timings go into lock-free histograms, and reads are counted in striped counters.
+ */
+public final class ConfigMetrics {
+
+    private static final int DUMP_TOP_READS = 10;
+
+    private final LongAdder reloadCount = new LongAdder();
+    private final LongAdder totalKeysChanged = new LongAdder();
+    private volatile long lastKeysChanged;
+    private volatile long lastMergeNanos;
+    private final Map<String, Long> lastParseNanos = new ConcurrentHashMap<>(); // Maps file paths to their last parse time
+    private final LatencyHistogram reloadTimes = new LatencyHistogram();
+    private final LatencyHistogram dispatchLatencies = new LatencyHistogram();
+    private final LatencyHistogram listenerRunTimes = new LatencyHistogram();
+    private final Map<String, LongAdder> readCounters = new ConcurrentHashMap<>(); // Shared by every entry of a path
+
+    private Map<String, Long> lastDumpReadCounts = Collections.emptyMap(); // Guarded by this
+    private long lastDumpNanos = System.nanoTime(); // Guarded by this
+
+    void recordParse(String file, long nanos) {
+        lastParseNanos.put(file, nanos);
+    }
+
+    void recordReload(long totalNanos, long mergeNanos) {
+        reloadCount.increment();
+        reloadTimes.record(totalNanos);
+        lastMergeNanos = mergeNanos;
+    }
+
+    void recordKeysChanged(int keysChanged) {
+        lastKeysChanged = keysChanged;
+        totalKeysChanged.add(keysChanged);
+    }
+
+    /**
+     * @param latencyNanos time from the generation being published until the listener started
+     * @param runNanos time the listener took
+     */
+    void recordListenerRun(long latencyNanos, long runNanos) {
+        dispatchLatencies.record(latencyNanos);
+        listenerRunTimes.record(runNanos);
+    }
+
+    /**
+     * @return the read counter for a normalized path, shared by every entry of the path
+     */
+    LongAdder readCounter(String path) {
+        return readCounters.computeIfAbsent(path, key -> new LongAdder());
+    }
+
+    public long getReloadCount() {
+        return reloadCount.sum();
+    }
+
+    /**
+     * @return number of values that changed in the last reload
+     */
+    public long getLastKeysChanged() {
+        return lastKeysChanged;
+    }
+
+    public long getTotalKeysChanged() {
+        return totalKeysChanged.sum();
+    }
+
+    /**
+     * @return time the last reload spent merging layers and building the snapshot, excluding parsing
+     */
+    public long getLastMergeNanos() {
+        return lastMergeNanos;
+    }
+
+    /**
+     * @return how long each config file took the last time it was parsed
+     */
+    public Map<String, Long> getLastParseNanos() {
+        return Collections.unmodifiableMap(new HashMap<>(lastParseNanos));
+    }
+
+    /**
+     * @return duration of whole reloads, from parsing to dispatching listeners
+     */
+    public LatencyHistogram getReloadTimes() {
+        return reloadTimes;
+    }
+
+    /**
+     * @return time from a generation being published until each affected listener started running
+     */
+    public LatencyHistogram getDispatchLatencies() {
+        return dispatchLatencies;
+    }
+
+    public LatencyHistogram getListenerRunTimes() {
+        return listenerRunTimes;
+    }
+
+    /**
+     * @return number of reads of each path through YamlConfigEntry since the manager started
+     */
+    public Map<String, Long> getReadCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        readCounters.forEach((path, counter) -> counts.put(path, counter.sum()));
+        return counts;
+    }
+
+    /**
+     * Summarizes the metrics in a few lines, with the most read paths and their read rate since the previous dump.
+     */
+    public synchronized String dump() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastDumpNanos) / 1e9);
+        Map<String, Long> readCounts = getReadCounts();
+        Map<String, Long> readsSinceLastDump = new LinkedHashMap<>();
+        readCounts.forEach((path, count) -> readsSinceLastDump.put(path, count - lastDumpReadCounts.getOrDefault(path, 0L)));
+        lastDumpReadCounts = readCounts;
+        lastDumpNanos = now;
+
+        StringBuilder dump = new StringBuilder();
+        dump.append("reloads=").append(getReloadCount())
+            .append(" lastKeysChanged=").append(lastKeysChanged)
+            .append(" lastMerge=").append(TimeUnit.NANOSECONDS.toMicros(lastMergeNanos)).append("us")
+            .append("\n  reload: ").append(reloadTimes)
+            .append("\n  dispatch latency: ").append(dispatchLatencies)
+            .append("\n  listener run: ").append(listenerRunTimes);
+        List<Map.Entry<String, Long>> topReads = new ArrayList<>(readsSinceLastDump.entrySet());
+        topReads.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        for (Map.Entry<String, Long> read : topReads.subList(0, Math.min(DUMP_TOP_READS, topReads.size()))) {
+            if (read.getValue() == 0) {
+                break;
+            }
+            dump.append("\n  reads/s ").append(read.getKey()).append(": ").append(Math.round(read.getValue() / seconds));
+        }
+        return dump.toString();
+    }
+}
@@ -0,0 +1,490 @@
+package org.liamwang.yamlconfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import org.apache.log4j.Logger;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+/**
+ * Serves a manager's config on the loopback interface, so tuning tools can set values without editing files. One
+ * thread runs a selector for every connection. Clients send UTF-8 lines and get one line back per command:
+ *
+ * <pre>
+ * set Drive/P=0.5; Drive/I=0; Shooter/Table=[[0, 1000], [5, 3000]]   -> ok 42
+ * get Drive/P Drive/D                                               -> values Drive/P=0.5; Drive/D=null
+ * subscribe Drive                                                   -> ok
+ *                                                                   -> changed 43 Drive/P=0.6
+ * </pre>
+ *
+ * Values are YAML flow scalars, lists of numbers or tables of numbers, and strings containing ";" must be quoted. Only
+ * standard YAML tags are resolved, so a value tagged with a class name is an error rather than an object. The values of
+ * one set command are applied together as one generation in the manager's in-memory override layer, and a null value
+ * removes an override. Sets run on the manager's reload thread, in order with the other commands of their connection, so
+ * the server thread never waits for a reload or for the inline listeners a set runs, and keeps answering other
+ * connections meanwhile. After subscribe, the connection receives the new values under the prefix each time they change.
+ * A client that does not read its changes fast enough receives fewer lines, merged over several generations, instead
+ * of slowing down the config.
+ *
+ * @see YamlConfigManager#startServer(int)
+ */
+public final class ConfigServer implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ConfigServer.class);
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    private final YamlConfigManager manager;
+    private final Executor commandExecutor; // The manager's reload thread
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread thread;
+    private final Yaml yaml = new Yaml(new SafeConstructor()); // Never constructs tagged classes. Only used on the server thread
+    private volatile boolean running = true;
+
+    ConfigServer(YamlConfigManager manager, int port) throws IOException {
+        this.manager = manager;
+        this.commandExecutor = manager.getReloadScheduler().getExecutor();
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "yaml-config-server");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Config server listening on port " + getPort());
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Closes every connection and stops the server thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            logger.error("Config server stopped: " + e.toString());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close config server: " + e.toString());
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            SocketChannel channel = serverChannel.accept();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // Replies are small and latency matters
+                SelectionKey channelKey = channel.register(selector, SelectionKey.OP_READ);
+                channelKey.attach(new Connection(channel, channelKey));
+            }
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("Config server connection closed: " + e.toString());
+            connection.close();
+        }
+    }
+
+    /**
+     * Parses one command line on the server thread, which owns the YAML parser.
+     *
+     * @return the command, or a command replying with the error if the line is not a valid command
+     */
+    private Command parse(String line, Connection connection) {
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String arguments = space < 0 ? "" : line.substring(space + 1).trim();
+        try {
+            switch (command) {
+                case "set":
+                    Map<String, Object> assignments = parseAssignments(arguments);
+                    return new Command(false, () -> "ok " + manager.setOverrides(assignments));
+                case "get":
+                    return new Command(true, () -> {
+                        List<String> values = new ArrayList<>();
+                        for (String path : arguments.split(" +")) {
+                            if (!path.isEmpty()) {
+                                String id = PathNormalizer.canonicalId(path);
+                                manager.loadSubtree(id);
+                                values.add(path + "=" + formatValue(manager.getSnapshot().get(id)));
+                            }
+                        }
+                        return "values " + String.join("; ", values);
+                    });
+                case "subscribe":
+                    return new Command(true, () -> {
+                        connection.subscribe(arguments);
+                        return "ok";
+                    });
+                default:
+                    return Command.reply("error unknown command " + command);
+            }
+        } catch (RuntimeException e) { // Bad input, e.g. a YAMLException, must not stop the server
+            return Command.reply(error(e));
+        }
+    }
+
+    private static String error(RuntimeException e) {
+        String message = e.getMessage() == null ? e.toString() : e.getMessage();
+        return "error " + message.replace('\n', ' ');
+    }
+
+    /**
+     * A parsed command line.
+     */
+    private static final class Command {
+
+        private final boolean readOnly; // Only reads published values, so it can run on the server thread
+        private final Supplier<String> action; // Runs the command and returns its reply
+
+        private Command(boolean readOnly, Supplier<String> action) {
+            this.readOnly = readOnly;
+            this.action = action;
+        }
+
+        static Command reply(String reply) {
+            return new Command(true, () -> reply);
+        }
+
+        String run() {
+            try {
+                return action.get();
+            } catch (RuntimeException e) {
+                return error(e);
+            }
+        }
+    }
+
+    /**
+     * Parses "path=value; path=value", splitting on semicolons outside quotes.
+     */
+    private Map<String, Object> parseAssignments(String arguments) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i <= arguments.length(); i++) {
+            char c = i < arguments.length() ? arguments.charAt(i) : ';';
+            if (quote != 0) {
+                if (c == '\\' && quote == '"') {
+                    i++; // Skip the escaped character
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == ';') {
+                String assignment = arguments.substring(start, Math.min(i, arguments.length())).trim();
+                start = i + 1;
+                if (assignment.isEmpty()) {
+                    continue;
+                }
+                int equals = assignment.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("expected path=value in " + assignment);
+                }
+                values.put(assignment.substring(0, equals).trim(), toConfigValue(yaml.load(assignment.substring(equals + 1))));
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        return values;
+    }
+
+    /**
+     * @return the parsed YAML value with lists of numbers as double[] and tables of numbers as double[][]
+     */
+    private static Object toConfigValue(Object value) {
+        if (!(value instanceof List)) {
+            return value;
+        }
+        List<?> list = (List<?>) value;
+        if (!list.isEmpty() && list.get(0) instanceof List) {
+            double[][] table = new double[list.size()][];
+            for (int row = 0; row < table.length; row++) {
+                Object rowValue = toConfigValue(list.get(row));
+                if (!(rowValue instanceof double[]) || (row > 0 && ((double[]) rowValue).length != table[0].length)) {
+                    throw new IllegalArgumentException("table rows must be lists of numbers of equal length");
+                }
+                table[row] = (double[]) rowValue;
+            }
+            return table;
+        }
+        double[] array = new double[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            if (!(list.get(i) instanceof Number)) {
+                throw new IllegalArgumentException("lists must hold only numbers");
+            }
+            array[i] = ((Number) list.get(i)).doubleValue();
+        }
+        return array;
+    }
+
+    /**
+     * @return the value in YAML flow syntax, as accepted by set
+     */
+    static String formatValue(Object value) {
+        if (value instanceof String) {
+            String string = (String) value;
+            return '"' + string.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+        } else if (value instanceof Double) {
+            double number = (Double) value;
+            return Double.isNaN(number) ? ".nan" : Double.isInfinite(number) ? (number > 0 ? ".inf" : "-.inf") : value.toString();
+        }
+        return YamlConfigManager.valueToString(value);
+    }
+
+    /**
+     * One client. Replies are queued by the reload thread running its commands, change lines by the thread publishing
+     * them, and both are written by the server thread.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer input = ByteBuffer.allocate(1024);
+        private boolean discarding; // Skipping the rest of a line that was too long, up to its newline
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>(); // Guarded by this
+        private final List<Flow.Subscription> subscriptions = new ArrayList<>(); // Guarded by this
+        private final List<Flow.Subscription> awaitingFlush = new ArrayList<>(); // Guarded by this, request more once written
+        private final ArrayDeque<Command> commands = new ArrayDeque<>(); // Guarded by this, parsed but not run yet
+        private boolean runningCommands; // Guarded by this, whether a task running the queued commands is scheduled
+
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            input.flip();
+            int lineStart = 0;
+            for (int i = 0; i < input.limit(); i++) {
+                if (input.get(i) == '\n') {
+                    String line = discarding ? "" : new String(input.array(), lineStart, i - lineStart, StandardCharsets.UTF_8).trim();
+                    lineStart = i + 1;
+                    discarding = false;
+                    if (!line.isEmpty()) {
+                        submit(parse(line, this));
+                    }
+                }
+            }
+            input.position(lineStart);
+            input.compact();
+            if (!input.hasRemaining()) { // Line longer than the buffer
+                if (input.capacity() >= MAX_LINE_LENGTH) {
+                    if (!discarding) { // The rest of the line must not run as a command of its own
+                        submit(Command.reply("error line too long"));
+                        discarding = true;
+                    }
+                    input.clear();
+                } else {
+                    ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+                    input.flip();
+                    larger.put(input);
+                    input = larger;
+                }
+            }
+        }
+
+        /**
+         * Runs a command on the server thread if it only reads and no command is queued before it, and otherwise queues
+         * it for the reload thread, which holds the manager lock while a set publishes its values and runs inline
+         * listeners. Only the server thread submits commands.
+         */
+        private void submit(Command command) {
+            synchronized (this) {
+                if (runningCommands || !command.readOnly) {
+                    commands.add(command);
+                    if (runningCommands) {
+                        return;
+                    }
+                    runningCommands = true;
+                    command = null;
+                }
+            }
+            if (command != null) {
+                send(command.run());
+                return;
+            }
+            try {
+                commandExecutor.execute(this::runCommands);
+            } catch (RejectedExecutionException e) { // Manager shut down
+                close();
+            }
+        }
+
+        /**
+         * Runs the queued commands one at a time, so their replies keep the order the commands were sent in even when
+         * the reload executor has several threads.
+         */
+        private void runCommands() {
+            while (true) {
+                Command command;
+                synchronized (this) {
+                    command = commands.poll();
+                    if (command == null) {
+                        runningCommands = false;
+                        return;
+                    }
+                }
+                send(command.run());
+            }
+        }
+
+        /**
+         * Queues a line and wakes the server thread to write it. Safe to call from any thread.
+         */
+        void send(String line) {
+            synchronized (this) {
+                output.add(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+            }
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                selector.wakeup();
+            }
+        }
+
+        void flush() throws IOException {
+            List<Flow.Subscription> ready;
+            synchronized (this) {
+                while (!output.isEmpty()) {
+                    channel.write(output.peek());
+                    if (output.peek().hasRemaining()) {
+                        return; // Socket buffer full, wait until writable again
+                    }
+                    output.poll();
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                ready = new ArrayList<>(awaitingFlush);
+                awaitingFlush.clear();
+            }
+            ready.forEach(subscription -> subscription.request(1)); // May queue the next change line right away
+        }
+
+        void subscribe(String prefix) {
+            manager.getChangePublisher(prefix, Runnable::run).subscribe(new Flow.Subscriber<ConfigChangeBatch>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    synchronized (Connection.this) {
+                        subscriptions.add(subscription);
+                    }
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(ConfigChangeBatch batch) {
+                    List<String> values = new ArrayList<>();
+                    batch.getChanges().forEach(change -> values.add(change.getPath() + "=" + formatValue(change.getNewValue())));
+                    synchronized (Connection.this) {
+                        awaitingFlush.add(subscription); // One line in flight per subscription
+                    }
+                    send("changed " + batch.getGeneration() + " " + String.join("; ", values));
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    send("error " + throwable.getMessage());
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+        }
+
+        void close() {
+            List<Flow.Subscription> cancelled;
+            synchronized (this) {
+                cancelled = new ArrayList<>(subscriptions);
+                subscriptions.clear();
+                output.clear();
+                commands.clear();
+            }
+            cancelled.forEach(Flow.Subscription::cancel);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close config server connection: " + e.toString());
+            }
+        }
+    }
+}
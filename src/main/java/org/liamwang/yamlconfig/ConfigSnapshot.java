@@ -0,0 +1,124 @@
+package org.liamwang.yamlconfig;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable view of one generation of the reduced config. A new snapshot is built on each reload and published by
+ * {@link YamlConfigManager} with a single reference swap, so readers never observe a partially applied update.
+ *
+ * Values are held in a persistent {@link ValueTrie}. The next generation is derived from the previous one by applying
+ * only the values that changed, so it shares every unchanged value and trie node with the generations before it, and
+ * two generations are diffed by skipping the subtrees they share. A {@link YamlConfigEntry} resolves its
+ * {@link ConfigValue} once per generation and then reads a primitive field without hashing, boxing or casting.
+ */
+final class ConfigSnapshot {
+
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(0, ValueTrie.EMPTY);
+
+    private final long generation;
+    private final ValueTrie values;
+
+    ConfigSnapshot(long generation, Map<String, Object> values) {
+        this(generation, toTrie(values));
+    }
+
+    private ConfigSnapshot(long generation, ValueTrie values) {
+        this.generation = generation;
+        this.values = values;
+    }
+
+    private static ValueTrie toTrie(Map<String, Object> values) {
+        ValueTrie trie = ValueTrie.EMPTY;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            trie = trie.put(entry.getKey(), ConfigValue.of(entry.getValue()));
+        }
+        return trie;
+    }
+
+    /**
+     * @return a snapshot with the same values published as another generation, sharing every value with this one
+     */
+    ConfigSnapshot withGeneration(long newGeneration) {
+        return new ConfigSnapshot(newGeneration, values);
+    }
+
+    /**
+     * Derives a generation from this one. Paths whose new value equals the current one keep their current
+     * {@link ConfigValue}, so they neither allocate nor show up in {@link #changedPathsSince(ConfigSnapshot)}. Lists and
+     * tables are compared in place, so only changed ones are copied into a new buffer.
+     *
+     * @param changes maps normalized config paths to their new values, null for paths to remove
+     */
+    ConfigSnapshot withChanges(long newGeneration, Map<String, Object> changes) {
+        ValueTrie trie = values;
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            String path = change.getKey();
+            ConfigValue current = trie.get(path);
+            if (current != null && current.sameValue(change.getValue())) {
+                continue;
+            }
+            ConfigValue value = ConfigValue.of(change.getValue());
+            trie = value.isPresent() ? trie.put(path, value) : trie.remove(path);
+        }
+        return new ConfigSnapshot(newGeneration, trie);
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    int size() {
+        return values.size();
+    }
+
+    /**
+     * @param normalizedPath canonical config path
+     * @return the value at the path, or {@link ConfigValue#NONE} if the path is not present in this generation
+     */
+    ConfigValue getValue(String normalizedPath) {
+        ConfigValue value = values.get(normalizedPath);
+        return value == null ? ConfigValue.NONE : value;
+    }
+
+    /**
+     * @return the value at the path, boxed, or null if not present
+     */
+    Object get(String normalizedPath) {
+        return getValue(normalizedPath).toObject();
+    }
+
+    /**
+     * Visits every path and value without boxing them, in no particular order.
+     */
+    void forEach(BiConsumer<String, ConfigValue> action) {
+        values.forEach(action);
+    }
+
+    /**
+     * Boxes every value into a map. Meant for dumps and persistence, not for reads.
+     *
+     * @return map of normalized config paths to values, sorted by path
+     */
+    Map<String, Object> getValues() {
+        Map<String, Object> boxedValues = new TreeMap<>();
+        values.forEach((path, value) -> boxedValues.put(path, value.toObject()));
+        return boxedValues;
+    }
+
+    /**
+     * Computes the paths whose value was added, removed or changed between a previous generation and this one. When
+     * this generation was derived from the previous one, runs in time proportional to the number of changed values.
+     *
+     * @param previous the generation to compare against
+     * @return the set of changed normalized paths, empty if nothing changed
+     */
+    Set<String> changedPathsSince(ConfigSnapshot previous) {
+        Set<String> changedPaths = new LinkedHashSet<>();
+        values.diff(previous.values, changedPaths::add);
+        return changedPaths;
+    }
+}
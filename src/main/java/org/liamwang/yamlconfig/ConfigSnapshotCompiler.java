@@ -0,0 +1,12 @@
+package org.liamwang.yamlconfig;
+
+/**
+ * Parses the deploy folder and writes its binary config snapshot, so the robot can skip YAML parsing on its first boot
+ * after a deploy. Run from the project folder, e.g. with the compileConfigSnapshot Gradle task.
+ */
+public class ConfigSnapshotCompiler {
+
+    public static void main(String[] args) {
+        YamlConfigManager.compileSnapshotFile();
+    }
+}
@@ -0,0 +1,303 @@
+package org.liamwang.yamlconfig;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Objects;
+
+/**
+ * One immutable config value, stored unboxed. Values are the leaves of a {@link ConfigSnapshot} and are shared by every
+ * generation in which they do not change, so a {@link YamlConfigEntry} bound to a value reads a primitive field without
+ * hashing, boxing or casting.
+ *
+ * Lists of numbers and tables (lists of equal length lists of numbers) are copied once into a direct buffer owned by the
+ * value, so table lookups and interpolation read straight from off-heap memory.
+ */
+final class ConfigValue {
+
+    static final byte TYPE_NONE = 0;
+    static final byte TYPE_INTEGER = 1; // Integer or Long, exact in longValue, widened in doubleValue
+    static final byte TYPE_BIG_INTEGER = 2; // In ref, widened in doubleValue
+    static final byte TYPE_DOUBLE = 3;
+    static final byte TYPE_BOOLEAN = 4; // 0 or 1 in longValue
+    static final byte TYPE_STRING = 5;
+    static final byte TYPE_DOUBLE_ARRAY = 6; // Read-only direct buffer in ref
+    static final byte TYPE_TABLE = 7; // Row-major read-only direct buffer in ref
+
+    /**
+     * Value of paths that are not present, reading as the default value of every type.
+     */
+    static final ConfigValue NONE = new ConfigValue(TYPE_NONE, 0, 0, null, 0);
+
+    private final byte type;
+    private final long longValue;
+    private final double doubleValue;
+    private final Object ref;
+    private final int columns; // Number of columns for tables
+
+    private ConfigValue(byte type, long longValue, double doubleValue, Object ref, int columns) {
+        this.type = type;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.ref = ref;
+        this.columns = columns;
+    }
+
+    /**
+     * @param value a flattened value: a number, boolean, string, double[] or rectangular double[][]
+     * @return the value, or {@link #NONE} for null or any other type
+     */
+    static ConfigValue of(Object value) {
+        if (value instanceof Integer || value instanceof Long) {
+            return new ConfigValue(TYPE_INTEGER, ((Number) value).longValue(), ((Number) value).doubleValue(), null, 0);
+        } else if (value instanceof BigInteger) {
+            return new ConfigValue(TYPE_BIG_INTEGER, 0, ((Number) value).doubleValue(), value, 0);
+        } else if (value instanceof Number) {
+            return new ConfigValue(TYPE_DOUBLE, 0, ((Number) value).doubleValue(), null, 0);
+        } else if (value instanceof Boolean) {
+            return new ConfigValue(TYPE_BOOLEAN, (Boolean) value ? 1 : 0, 0, null, 0);
+        } else if (value instanceof String) {
+            return new ConfigValue(TYPE_STRING, 0, 0, value, 0);
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            DoubleBuffer buffer = allocate(array.length);
+            buffer.put(array);
+            return new ConfigValue(TYPE_DOUBLE_ARRAY, 0, 0, buffer.flip().asReadOnlyBuffer(), 0);
+        } else if (value instanceof double[][]) {
+            double[][] table = (double[][]) value;
+            int columns = table.length == 0 ? 0 : table[0].length;
+            DoubleBuffer buffer = allocate(table.length * columns);
+            for (double[] row : table) {
+                buffer.put(row);
+            }
+            return new ConfigValue(TYPE_TABLE, 0, 0, buffer.flip().asReadOnlyBuffer(), columns);
+        }
+        return NONE;
+    }
+
+    private static DoubleBuffer allocate(int length) {
+        return ByteBuffer.allocateDirect(length * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    byte getType() {
+        return type;
+    }
+
+    boolean isPresent() {
+        return type != TYPE_NONE;
+    }
+
+    boolean isNumber() {
+        return type == TYPE_INTEGER || type == TYPE_BIG_INTEGER || type == TYPE_DOUBLE;
+    }
+
+    /**
+     * @return the value boxed the way it was parsed, or null for {@link #NONE}
+     */
+    Object toObject() {
+        switch (type) {
+            case TYPE_INTEGER:
+                return longValue == (int) longValue ? (Object) (int) longValue : (Object) longValue;
+            case TYPE_DOUBLE:
+                return doubleValue;
+            case TYPE_BOOLEAN:
+                return longValue != 0;
+            case TYPE_BIG_INTEGER:
+            case TYPE_STRING:
+                return ref;
+            case TYPE_DOUBLE_ARRAY:
+                return getDoubleArray(null);
+            case TYPE_TABLE:
+                double[][] table = new double[getTableRows()][columns];
+                for (int row = 0; row < table.length; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        table[row][column] = getTableValue(row, column, 0);
+                    }
+                }
+                return table;
+            default:
+                return null;
+        }
+    }
+
+    double getDouble(double defaultValue) {
+        return isNumber() ? doubleValue : defaultValue;
+    }
+
+    /**
+     * @return the value if it is a whole number in int range, otherwise the default rather than a truncated or wrapped
+     * value
+     */
+    int getInt(int defaultValue) {
+        long value = getLong(defaultValue);
+        return value == (int) value ? (int) value : defaultValue;
+    }
+
+    /**
+     * @return the value if it is a whole number in long range, otherwise the default rather than a truncated or clamped
+     * value
+     */
+    long getLong(long defaultValue) {
+        switch (type) {
+            case TYPE_INTEGER:
+                return longValue;
+            case TYPE_BIG_INTEGER:
+                BigInteger bigValue = (BigInteger) ref;
+                return bigValue.bitLength() < Long.SIZE ? bigValue.longValue() : defaultValue;
+            case TYPE_DOUBLE:
+                boolean whole = doubleValue == Math.rint(doubleValue) && Math.abs(doubleValue) < 0x1p63;
+                return whole ? (long) doubleValue : defaultValue;
+            default:
+                return defaultValue;
+        }
+    }
+
+    boolean getBoolean(boolean defaultValue) {
+        return type == TYPE_BOOLEAN ? longValue != 0 : defaultValue;
+    }
+
+    String getString(String defaultValue) {
+        return type == TYPE_STRING ? (String) ref : defaultValue;
+    }
+
+    /**
+     * @return a copy of the list, or the default value
+     */
+    double[] getDoubleArray(double[] defaultValue) {
+        if (type != TYPE_DOUBLE_ARRAY) {
+            return defaultValue;
+        }
+        DoubleBuffer buffer = ((DoubleBuffer) ref).duplicate();
+        double[] array = new double[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+    /**
+     * @return a new read-only view of the list or row-major table, or null
+     */
+    DoubleBuffer getDoubleBuffer() {
+        return type == TYPE_DOUBLE_ARRAY || type == TYPE_TABLE ? ((DoubleBuffer) ref).duplicate() : null;
+    }
+
+    int getTableRows() {
+        return type == TYPE_TABLE && columns > 0 ? ((DoubleBuffer) ref).limit() / columns : 0;
+    }
+
+    int getTableColumns() {
+        return type == TYPE_TABLE ? columns : 0;
+    }
+
+    double getTableValue(int row, int column, double defaultValue) {
+        if (column < 0 || column >= getTableColumns() || row < 0 || row >= getTableRows()) {
+            return defaultValue;
+        }
+        return ((DoubleBuffer) ref).get(row * columns + column);
+    }
+
+    /**
+     * Linearly interpolates a column of a table whose first column holds ascending x values, clamping to the first and
+     * last rows outside their range. Reads the off-heap table directly and does not allocate.
+     *
+     * @return the interpolated value, NaN if x is NaN, or the default value if this is not a table with the column
+     */
+    double interpolate(double x, int column, double defaultValue) {
+        int rows = getTableRows();
+        if (column <= 0 || column >= getTableColumns() || rows == 0) {
+            return defaultValue;
+        }
+        if (Double.isNaN(x)) {
+            return Double.NaN; // Otherwise the search would land on an arbitrary row
+        }
+        DoubleBuffer table = (DoubleBuffer) ref;
+        if (x <= table.get(0)) {
+            return table.get(column);
+        }
+        int last = (rows - 1) * columns;
+        if (x >= table.get(last)) {
+            return table.get(last + column);
+        }
+        int low = 0; // Invariant: x(low) < x <= x(high)
+        int high = rows - 1;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (table.get(mid * columns) < x) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        int lowRow = low * columns;
+        int highRow = high * columns;
+        double x0 = table.get(lowRow);
+        double x1 = table.get(highRow);
+        double y0 = table.get(lowRow + column);
+        double y1 = table.get(highRow + column);
+        return x1 == x0 ? y1 : y0 + (y1 - y0) * (x - x0) / (x1 - x0);
+    }
+
+    /**
+     * Compares values without boxing. Values are shared between generations, so unchanged values are usually the same
+     * instance and compare by reference.
+     */
+    boolean sameValue(ConfigValue other) {
+        if (this == other) {
+            return true;
+        }
+        if (type != other.type) {
+            return false;
+        }
+        switch (type) {
+            case TYPE_INTEGER:
+            case TYPE_BOOLEAN:
+                return longValue == other.longValue;
+            case TYPE_DOUBLE:
+                return Double.doubleToLongBits(doubleValue) == Double.doubleToLongBits(other.doubleValue);
+            case TYPE_TABLE:
+                return columns == other.columns && ref.equals(other.ref);
+            case TYPE_DOUBLE_ARRAY:
+                return ref.equals(other.ref);
+            default:
+                return Objects.equals(ref, other.ref);
+        }
+    }
+
+    /**
+     * Compares against a flattened value, reading lists and tables in place so an unchanged one is not copied into a new
+     * direct buffer first. Equal to {@code sameValue(ConfigValue.of(value))}.
+     */
+    boolean sameValue(Object value) {
+        if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            return type == TYPE_DOUBLE_ARRAY && ((DoubleBuffer) ref).limit() == array.length && sameContents(array, 0);
+        } else if (value instanceof double[][]) {
+            double[][] table = (double[][]) value;
+            int tableColumns = table.length == 0 ? 0 : table[0].length;
+            if (type != TYPE_TABLE || columns != tableColumns || ((DoubleBuffer) ref).limit() != table.length * columns) {
+                return false;
+            }
+            for (int row = 0; row < table.length; row++) {
+                if (table[row].length != columns || !sameContents(table[row], row * columns)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return sameValue(of(value));
+    }
+
+    /**
+     * @return whether the buffer holds the array at the offset, with the equality of {@link DoubleBuffer#equals}
+     */
+    private boolean sameContents(double[] array, int offset) {
+        DoubleBuffer buffer = (DoubleBuffer) ref;
+        for (int i = 0; i < array.length; i++) {
+            double element = buffer.get(offset + i);
+            if (element != array[i] && !(Double.isNaN(element) && Double.isNaN(array[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+package org.liamwang.yamlconfig;
+
+/**
+ * Execution times of one registered listener, captured when the stats were requested.
+ */
+public final class ListenerStats {
+
+    private final String path;
+    private final boolean prefix;
+    private final boolean async;
+    private final long runCount;
+    private final long coalescedCount;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long lastNanos;
+    private final long lastGeneration;
+
+    ListenerStats(String path, boolean prefix, boolean async, long runCount, long coalescedCount, long totalNanos,
+        long maxNanos, long lastNanos, long lastGeneration) {
+        this.path = path;
+        this.prefix = prefix;
+        this.async = async;
+        this.runCount = runCount;
+        this.coalescedCount = coalescedCount;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.lastNanos = lastNanos;
+        this.lastGeneration = lastGeneration;
+    }
+
+    /**
+     * @return normalized path the listener is registered at
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return true for a prefix listener, false for an entry listener
+     */
+    public boolean isPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return true if the listener runs on an executor rather than inline on the reload thread
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    public long getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * @return number of generations the listener skipped because a newer one arrived before it ran
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * @return generation the listener last ran for, -1 if it has not run since registration
+     */
+    public long getLastGeneration() {
+        return lastGeneration;
+    }
+
+    @Override
+    public String toString() {
+        return (prefix ? "prefix " : "entry ") + path + ": " + runCount + " runs, " + coalescedCount + " coalesced, max "
+            + maxNanos / 1000 + " us, total " + totalNanos / 1000 + " us";
+    }
+}
@@ -0,0 +1,85 @@
+package org.liamwang.yamlconfig;
+
+import static org.liamwang.yamlconfig.YamlConfigManager.PATH_SEPARATOR;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Listener registry indexed by path segment. Entry listeners fire when their exact path changes, prefix listeners fire
+ * when anything at or below their path changes. Resolving the listeners for a changed path visits one node per path
+ * segment, independent of how many listeners are registered.
+ *
+ * Registration and lookup are safe to call concurrently without a shared lock.
+ */
+final class ListenerTrie {
+
+    private final Node root = new Node();
+
+    /**
+     * @param normalizedPath normalized path of the entry
+     * @param listener listener to run when the value at exactly this path changes
+     */
+    void addEntryListener(String normalizedPath, ConfigListener listener) {
+        nodeFor(normalizedPath).entryListeners.add(listener);
+    }
+
+    /**
+     * @param normalizedPath normalized path of the prefix, "" for the root
+     * @param listener listener to run when any value at or below this path changes
+     */
+    void addPrefixListener(String normalizedPath, ConfigListener listener) {
+        nodeFor(normalizedPath).prefixListeners.add(listener);
+    }
+
+    /**
+     * Adds every listener affected by a change at the given path to the collection.
+     *
+     * @param normalizedPath normalized path that changed
+     * @param listeners collection to add affected listeners to, typically a set to fire each listener once
+     */
+    void collectListeners(String normalizedPath, Collection<ConfigListener> listeners) {
+        Node node = root;
+        listeners.addAll(node.prefixListeners);
+        int start = 0;
+        int length = normalizedPath.length();
+        while (start < length) {
+            int end = normalizedPath.indexOf(PATH_SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.children.get(normalizedPath.substring(start, end));
+            if (node == null) {
+                return;
+            }
+            listeners.addAll(node.prefixListeners);
+            start = end + 1;
+        }
+        listeners.addAll(node.entryListeners);
+    }
+
+    private Node nodeFor(String normalizedPath) {
+        Node node = root;
+        int start = 0;
+        int length = normalizedPath.length();
+        while (start < length) {
+            int end = normalizedPath.indexOf(PATH_SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.children.computeIfAbsent(normalizedPath.substring(start, end), segment -> new Node());
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private final List<ConfigListener> entryListeners = new CopyOnWriteArrayList<>();
+        private final List<ConfigListener> prefixListeners = new CopyOnWriteArrayList<>();
+    }
+}
@@ -0,0 +1,173 @@
+package org.liamwang.yamlconfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.log4j.Logger;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * A YAML file holding flat path/value pairs, written in the background. Writes requested while one is pending or in
+ * progress are coalesced into a single write of the latest values, and each write goes to a temporary file that is then
+ * renamed over the file, so readers and the folder watcher never see a partially written file. The size, modification
+ * time and hash of the last write are kept, so the folder watcher can tell the manager's own writes from edits.
+ */
+final class OverrideFile {
+
+    private static final Logger logger = Logger.getLogger(OverrideFile.class);
+
+    private static final String TEMP_SUFFIX = ".tmp"; // Not a .yaml file, so the folder watcher ignores it
+
+    private final Path path;
+    private final Executor executor;
+    private final AtomicReference<Map<String, Object>> pendingValues = new AtomicReference<>(); // Cleared once written
+    private volatile Write lastWrite;
+
+    /**
+     * @param executor executor to write on
+     */
+    OverrideFile(Path path, Executor executor) {
+        this.path = path;
+        this.executor = executor;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the values in the file by normalized path, empty if the file does not exist
+     */
+    Map<String, Object> read() throws IOException {
+        Map<String, Object> values = new LinkedHashMap<>();
+        ConfigFileReader reader = new ConfigFileReader();
+        try {
+            reader.read(path);
+        } catch (NoSuchFileException e) {
+            return values;
+        }
+        new YamlFlattener().flatten(reader.decodeChars(), values);
+        return values;
+    }
+
+    /**
+     * Queues a write of the values, replacing any write still pending.
+     */
+    void writeAsync(Map<String, Object> values) {
+        if (pendingValues.getAndSet(values) == null) {
+            executor.execute(this::flush);
+        }
+    }
+
+    /**
+     * @return whether values are queued or being written, which are newer than the file
+     */
+    boolean hasPendingWrite() {
+        return pendingValues.get() != null;
+    }
+
+    /**
+     * @return the last write, or null if the file has changed since or was never written
+     */
+    Write getLastWrite() {
+        Write write = lastWrite;
+        try {
+            if (write != null && Files.size(path) == write.size && Files.getLastModifiedTime(path).equals(write.lastModified)) {
+                return write;
+            }
+        } catch (IOException e) {
+            // Deleted or unreadable, so not the last write
+        }
+        return null;
+    }
+
+    /**
+     * Writes any pending values on the calling thread, e.g. before the executor shuts down.
+     */
+    synchronized void flush() { // Synchronized so writes land in the order their values were taken
+        Map<String, Object> values = pendingValues.get();
+        while (values != null) {
+            try {
+                write(values);
+            } catch (IOException e) {
+                logger.error("Unable to write config values to " + path + ": " + e.toString());
+            }
+            if (pendingValues.compareAndSet(values, null)) {
+                return;
+            }
+            values = pendingValues.get(); // Replaced while writing, no other flush was queued for it
+        }
+    }
+
+    /**
+     * Writes the values sorted by path, one pair per line with lists and tables in flow style.
+     */
+    synchronized void write(Map<String, Object> values) throws IOException {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.FLOW);
+        options.setWidth(Integer.MAX_VALUE); // Keep long tables on one line
+        Yaml yaml = new Yaml(options);
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, Object> entry : new TreeMap<>(values).entrySet()) {
+            content.append(yaml.dump(entry.getKey()).trim()).append(": ").append(yaml.dump(toYaml(entry.getValue())).trim()).append('\n');
+        }
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+        Path tempFile = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        Files.write(tempFile, bytes);
+        // Recorded before the rename, which keeps the modification time, so the watcher event finds it
+        lastWrite = new Write(values, Files.getLastModifiedTime(tempFile), bytes.length, ConfigFile.newDigest().digest(bytes));
+        try {
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Object toYaml(Object value) {
+        if (value instanceof double[]) {
+            List<Double> list = new ArrayList<>();
+            for (double element : (double[]) value) {
+                list.add(element);
+            }
+            return list;
+        } else if (value instanceof double[][]) {
+            List<Object> rows = new ArrayList<>();
+            for (double[] row : (double[][]) value) {
+                rows.add(toYaml(row));
+            }
+            return rows;
+        }
+        return value;
+    }
+
+    /**
+     * Values written to the file, with the file's size, modification time and content hash right after the write.
+     */
+    static final class Write {
+
+        final Map<String, Object> values;
+        final FileTime lastModified;
+        final long size;
+        final byte[] hash;
+
+        private Write(Map<String, Object> values, FileTime lastModified, long size, byte[] hash) {
+            this.values = values;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.liamwang.yamlconfig;
+
+import static org.liamwang.yamlconfig.YamlConfigManager.PATH_SEPARATOR;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normalizes config paths in one pass over the characters, and maps raw paths to canonical path ids. A canonical id is
+ * the interned normalized path, so every map keyed by ids finds its key by reference on the first comparison.
+ */
+final class PathNormalizer {
+
+    static final int MAX_CACHED_PATHS = 8192;
+
+    private static final Map<String, String> canonicalIds = new ConcurrentHashMap<>(); // Maps raw paths to canonical ids
+
+    private PathNormalizer() {
+    }
+
+    /**
+     * @return the canonical id of a raw path: the normalized path without leading or trailing separators, interned
+     */
+    static String canonicalId(String rawPath) {
+        String id = canonicalIds.get(rawPath);
+        if (id == null) {
+            id = normalize(rawPath, false, true).intern();
+            if (canonicalIds.size() >= MAX_CACHED_PATHS) {
+                canonicalIds.clear(); // Cheaper than tracking use, and paths still read in a loop are cached again at once
+            }
+            canonicalIds.put(rawPath, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return whether the canonical id of the raw path is cached
+     */
+    static boolean isCached(String rawPath) {
+        return canonicalIds.containsKey(rawPath);
+    }
+
+    /**
+     * Collapses runs of separators into one and optionally adds a leading separator and removes a trailing one. Returns
+     * the path itself when it is already normalized.
+     */
+    static String normalize(String path, boolean withLeadingSlash, boolean removeTrailingSlash) {
+        int length = path.length();
+        if (length == 0) {
+            return "";
+        }
+        if (isNormalized(path, withLeadingSlash, removeTrailingSlash)) {
+            return path;
+        }
+
+        StringBuilder normalized = new StringBuilder(length + 1);
+        if (withLeadingSlash) {
+            normalized.append(PATH_SEPARATOR);
+        }
+        boolean previousSeparator = true; // Drops leading separators, the leading one is added above if wanted
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c == PATH_SEPARATOR) {
+                if (!previousSeparator) {
+                    normalized.append(c);
+                }
+                previousSeparator = true;
+            } else {
+                normalized.append(c);
+                previousSeparator = false;
+            }
+        }
+        int end = normalized.length();
+        if (removeTrailingSlash && end > 0 && normalized.charAt(end - 1) == PATH_SEPARATOR) {
+            normalized.setLength(end - 1);
+        }
+        return normalized.toString();
+    }
+
+    private static boolean isNormalized(String path, boolean withLeadingSlash, boolean removeTrailingSlash) {
+        int length = path.length();
+        if ((path.charAt(0) == PATH_SEPARATOR) != withLeadingSlash) {
+            return false;
+        }
+        if (removeTrailingSlash && path.charAt(length - 1) == PATH_SEPARATOR) {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            if (path.charAt(i) == PATH_SEPARATOR && path.charAt(i - 1) == PATH_SEPARATOR) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
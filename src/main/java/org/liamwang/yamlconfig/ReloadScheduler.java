@@ -0,0 +1,167 @@
+package org.liamwang.yamlconfig;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import org.apache.log4j.Logger;
+
+/**
+ * Coalesces file change events into reloads on a scheduler, which may be shared by several managers. A reload runs once
+ * no event has arrived for the quiet period, or once the oldest pending event is older than the max latency, whichever
+ * comes first.
+ *
+ * Pending state is guarded by the scheduler's lock and handed off before each reload runs, so an event that arrives
+ * while a reload is running schedules another reload, which waits for the manager lock.
+ */
+final class ReloadScheduler {
+
+    private static final Logger logger = Logger.getLogger(ReloadScheduler.class);
+
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor; // Whether shutdown stops the executor, false when it is shared
+    private final LongSupplier nanoClock; // Time source for the quiet period and max latency, in nanoseconds
+    private final Consumer<Set<Path>> reloadAction;
+
+    private volatile long quietPeriodMillis;
+    private volatile long maxLatencyMillis;
+
+    // Guarded by this
+    private Set<Path> dirtyFiles = new HashSet<>();
+    private long firstEventNanos;
+    private ScheduledFuture<?> pendingReload;
+
+    // Written under the lock or by the running reload, read from anywhere
+    private volatile long reloadCount;
+    private volatile long eventCount;
+    private volatile long coalescedEventCount;
+    private volatile long lastReloadLatencyMillis;
+
+    /**
+     * @param quietPeriodMillis how long to wait after the last event before reloading
+     * @param maxLatencyMillis upper bound on how long the first event of a burst waits for a reload
+     * @param reloadAction reload to run with the set of files changed since the previous reload
+     */
+    ReloadScheduler(long quietPeriodMillis, long maxLatencyMillis, Consumer<Set<Path>> reloadAction) {
+        this(Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "yaml-config-reload");
+            thread.setDaemon(true);
+            return thread;
+        }), true, quietPeriodMillis, maxLatencyMillis, reloadAction);
+    }
+
+    /**
+     * @param ownsExecutor whether {@link #shutdown()} stops the executor, false if other managers share it
+     */
+    ReloadScheduler(ScheduledExecutorService executor, boolean ownsExecutor, long quietPeriodMillis, long maxLatencyMillis,
+        Consumer<Set<Path>> reloadAction) {
+        this(executor, ownsExecutor, System::nanoTime, quietPeriodMillis, maxLatencyMillis, reloadAction);
+    }
+
+    /**
+     * @param nanoClock time source in nanoseconds, which must match the executor's delays, e.g. a manual clock in tests
+     */
+    ReloadScheduler(ScheduledExecutorService executor, boolean ownsExecutor, LongSupplier nanoClock, long quietPeriodMillis,
+        long maxLatencyMillis, Consumer<Set<Path>> reloadAction) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.nanoClock = nanoClock;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.reloadAction = reloadAction;
+    }
+
+    ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    void setTiming(long quietPeriodMillis, long maxLatencyMillis) {
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * Records a changed file and (re)schedules the next reload. Safe to call from any thread.
+     */
+    void fileChanged(Path path) {
+        executor.execute(() -> onFileChanged(path));
+    }
+
+    private synchronized void onFileChanged(Path path) {
+        long now = nanoClock.getAsLong();
+        dirtyFiles.add(path);
+        eventCount++;
+        if (pendingReload == null) {
+            firstEventNanos = now;
+        } else {
+            pendingReload.cancel(false);
+            coalescedEventCount++;
+        }
+        long deadlineMillis = maxLatencyMillis - TimeUnit.NANOSECONDS.toMillis(now - firstEventNanos);
+        long delayMillis = Math.max(0, Math.min(quietPeriodMillis, deadlineMillis));
+        pendingReload = executor.schedule(this::runReload, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runReload() {
+        Set<Path> changedFiles;
+        long firstEventNanos;
+        synchronized (this) {
+            changedFiles = dirtyFiles;
+            dirtyFiles = new HashSet<>();
+            pendingReload = null;
+            firstEventNanos = this.firstEventNanos;
+        }
+        try {
+            reloadAction.accept(changedFiles);
+        } catch (RuntimeException e) {
+            logger.error("Config reload failed: " + e.toString());
+        }
+        synchronized (this) {
+            lastReloadLatencyMillis = TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - firstEventNanos);
+            reloadCount++;
+        }
+        logger.debug("Reloaded " + changedFiles.size() + " files " + lastReloadLatencyMillis + " ms after first change");
+    }
+
+    /**
+     * @return number of reloads run so far
+     */
+    long getReloadCount() {
+        return reloadCount;
+    }
+
+    /**
+     * @return number of file change events received so far
+     */
+    long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return number of events folded into an already pending reload
+     */
+    long getCoalescedEventCount() {
+        return coalescedEventCount;
+    }
+
+    /**
+     * @return time from the first event of the last burst until its reload finished
+     */
+    long getLastReloadLatencyMillis() {
+        return lastReloadLatencyMillis;
+    }
+
+    synchronized void shutdown() {
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+}
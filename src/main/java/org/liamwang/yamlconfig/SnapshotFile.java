@@ -0,0 +1,324 @@
+package org.liamwang.yamlconfig;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a merged config, written after reloads that change it so the next startup can memory-map it
+ * instead of parsing every YAML file. The snapshot records the size and hash of each source file it was built from and
+ * is only used while all of them are unchanged.
+ *
+ * Layout: magic, version, robot name, source file count, then per source file its path, size and hash, then value count
+ * and per value its path, a type tag and the value.
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x59435346; // "YCSF"
+    private static final int VERSION = 3;
+
+    private static final byte TYPE_INT = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_BIG_INTEGER = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_STRING = 5;
+    private static final byte TYPE_DOUBLE_ARRAY = 6;
+    private static final byte TYPE_TABLE = 7;
+
+    private final String robotName;
+    private final List<Source> sources;
+    private final ConfigSnapshot values;
+
+    SnapshotFile(String robotName, List<Source> sources, ConfigSnapshot values) {
+        this.robotName = robotName;
+        this.sources = Collections.unmodifiableList(sources);
+        this.values = values;
+    }
+
+    String getRobotName() {
+        return robotName;
+    }
+
+    List<Source> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return the values, as generation 0 if the snapshot was read from a file
+     */
+    ConfigSnapshot getValues() {
+        return values;
+    }
+
+    /**
+     * @param rootFolder folder the source paths are relative to
+     * @return true if every source file still has the recorded size and content hash, and every file that was missing
+     * still is
+     */
+    boolean isUpToDate(Path rootFolder) {
+        ConfigFileReader reader = new ConfigFileReader();
+        for (Source source : sources) {
+            Path path = rootFolder.resolve(source.path);
+            if (source.size == Source.MISSING_SIZE) {
+                if (Files.exists(path)) {
+                    return false; // Created since
+                }
+                continue;
+            }
+            try {
+                if (Files.size(path) != source.size) {
+                    return false; // Changed without needing to read it
+                }
+                reader.read(path);
+                if (!MessageDigest.isEqual(reader.hash(), source.hash)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and renames it into place, so readers never see a partial file. Values are
+     * written straight from the trie without boxing them, lists and tables from their buffers.
+     */
+    void write(Path file) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, robotName);
+            out.writeInt(sources.size());
+            for (Source source : sources) {
+                writeString(out, source.path);
+                out.writeLong(source.size);
+                out.writeInt(source.hash.length);
+                out.write(source.hash);
+            }
+            out.writeInt(values.size());
+            values.forEach((path, value) -> {
+                try {
+                    writeString(out, path);
+                    writeValue(out, value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Memory-maps and decodes a snapshot. Every length read from the file is checked against the bytes left, so a
+     * corrupt file fails to decode instead of allocating arrays sized by garbage.
+     *
+     * @throws IOException if the file cannot be read, or is corrupt or not a snapshot of this version
+     */
+    static SnapshotFile read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a config snapshot of version " + VERSION + ": " + file);
+            }
+            String robotName = readString(buffer);
+            int sourceCount = readLength(buffer, Integer.BYTES + Long.BYTES + Integer.BYTES);
+            List<Source> sources = new ArrayList<>(sourceCount);
+            for (int i = 0; i < sourceCount; i++) {
+                String path = readString(buffer);
+                long size = buffer.getLong();
+                byte[] hash = new byte[readLength(buffer, 1)];
+                buffer.get(hash);
+                sources.add(new Source(path, size, hash));
+            }
+            int valueCount = readLength(buffer, Integer.BYTES + 1);
+            Map<String, Object> values = new LinkedHashMap<>(valueCount * 2);
+            for (int i = 0; i < valueCount; i++) {
+                values.put(readString(buffer).intern(), readValue(buffer)); // Canonical path ids, see PathNormalizer
+            }
+            return new SnapshotFile(robotName, sources, new ConfigSnapshot(0, values));
+        } catch (RuntimeException e) { // Any decoding failure means there is no usable snapshot
+            throw new IOException("Truncated or corrupt config snapshot: " + file, e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, ConfigValue value) throws IOException {
+        switch (value.getType()) {
+            case ConfigValue.TYPE_INTEGER:
+                long longValue = value.getLong(0);
+                if (longValue == (int) longValue) {
+                    out.writeByte(TYPE_INT);
+                    out.writeInt((int) longValue);
+                } else {
+                    out.writeByte(TYPE_LONG);
+                    out.writeLong(longValue);
+                }
+                break;
+            case ConfigValue.TYPE_BIG_INTEGER:
+                out.writeByte(TYPE_BIG_INTEGER);
+                writeString(out, value.toObject().toString());
+                break;
+            case ConfigValue.TYPE_DOUBLE:
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble(value.getDouble(0));
+                break;
+            case ConfigValue.TYPE_BOOLEAN:
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean(value.getBoolean(false));
+                break;
+            case ConfigValue.TYPE_STRING:
+                out.writeByte(TYPE_STRING);
+                writeString(out, value.getString(null));
+                break;
+            case ConfigValue.TYPE_DOUBLE_ARRAY:
+                out.writeByte(TYPE_DOUBLE_ARRAY);
+                writeDoubles(out, value.getDoubleBuffer(), true);
+                break;
+            case ConfigValue.TYPE_TABLE:
+                out.writeByte(TYPE_TABLE);
+                out.writeInt(value.getTableRows());
+                out.writeInt(value.getTableColumns());
+                writeDoubles(out, value.getDoubleBuffer(), false);
+                break;
+            default:
+                throw new IOException("Unsupported config value type: " + value.getType());
+        }
+    }
+
+    private static void writeDoubles(DataOutputStream out, DoubleBuffer buffer, boolean withLength) throws IOException {
+        if (withLength) {
+            out.writeInt(buffer.remaining());
+        }
+        while (buffer.hasRemaining()) {
+            out.writeDouble(buffer.get());
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) throws IOException {
+        byte type = buffer.get();
+        switch (type) {
+            case TYPE_INT:
+                return buffer.getInt();
+            case TYPE_LONG:
+                return buffer.getLong();
+            case TYPE_DOUBLE:
+                return buffer.getDouble();
+            case TYPE_BIG_INTEGER:
+                return new BigInteger(readString(buffer));
+            case TYPE_BOOLEAN:
+                return buffer.get() != 0;
+            case TYPE_STRING:
+                return readString(buffer);
+            case TYPE_DOUBLE_ARRAY:
+                return readDoubles(buffer, readLength(buffer, Double.BYTES));
+            case TYPE_TABLE:
+                int rows = buffer.getInt();
+                int columns = buffer.getInt();
+                if (rows < 0 || columns < 0 || (long) rows * columns * Double.BYTES > buffer.remaining()) {
+                    throw new IOException("Invalid table size " + rows + "x" + columns + " in config snapshot");
+                }
+                // Tables without columns read as empty, as ConfigValue stores them, so the row count can't allocate
+                double[][] table = new double[columns == 0 ? 0 : rows][];
+                for (int row = 0; row < table.length; row++) {
+                    table[row] = readDoubles(buffer, columns);
+                }
+                return table;
+            default:
+                throw new IOException("Unknown config value type tag: " + type);
+        }
+    }
+
+    /**
+     * Reads a length or count, checking that its elements fit in the bytes left.
+     *
+     * @param minElementBytes smallest encoded size of one element
+     */
+    private static int readLength(ByteBuffer buffer, int minElementBytes) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / minElementBytes) {
+            throw new IOException("Invalid length " + length + " in config snapshot");
+        }
+        return length;
+    }
+
+    private static double[] readDoubles(ByteBuffer buffer, int length) {
+        double[] array = new double[length];
+        buffer.asDoubleBuffer().get(array);
+        buffer.position(buffer.position() + length * Double.BYTES);
+        return array;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[readLength(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A file the snapshot was built from, with its path relative to the config root folder so a snapshot compiled on a
+     * development machine stays valid after deploy.
+     */
+    static final class Source {
+
+        private static final long MISSING_SIZE = -1;
+
+        private final String path;
+        private final long size;
+        private final byte[] hash;
+
+        Source(String path, long size, byte[] hash) {
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Source)) {
+                return false;
+            }
+            Source source = (Source) other;
+            return path.equals(source.path) && size == source.size && Arrays.equals(hash, source.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + Long.hashCode(size);
+        }
+
+        /**
+         * @return a source file that did not exist when the snapshot was built
+         */
+        static Source missing(String path) {
+            return new Source(path, MISSING_SIZE, new byte[0]);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.liamwang.yamlconfig;
+
+import static org.liamwang.yamlconfig.YamlConfigManager.PATH_SEPARATOR;
+
+import java.nio.CharBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds the first path segments a YAML config file contributes without parsing it, by reading the keys of the root
+ * mapping off the lines that start in column 0. Anything the scan cannot be sure about, such as a flow-style root, a
+ * complex key or a merge key, makes it give up so the caller can fall back to parsing the file.
+ */
+final class TopLevelKeyScanner {
+
+    private TopLevelKeyScanner() {
+    }
+
+    /**
+     * @param chars decoded file content, read from its position to its limit without being consumed
+     * @return first segments of the normalized paths the file contributes, or null if they cannot be determined
+     */
+    static Set<String> scan(CharBuffer chars) {
+        Set<String> keys = new HashSet<>();
+        int end = chars.limit();
+        int lineStart = chars.position();
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && chars.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (!scanLine(chars, lineStart, lineEnd, keys)) {
+                return null;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return keys;
+    }
+
+    /**
+     * @return false if the line makes the file's top-level keys undeterminable
+     */
+    private static boolean scanLine(CharBuffer chars, int start, int end, Set<String> keys) {
+        if (end > start && chars.get(end - 1) == '\r') {
+            end--;
+        }
+        if (start == end) {
+            return true;
+        }
+        char first = chars.get(start);
+        if (first == ' ' || first == '\t' || first == '#' || first == '%') {
+            return true; // Nested content, comment or directive
+        }
+        if (startsWith(chars, start, end, "---") || startsWith(chars, start, end, "...")) {
+            return isBlank(chars, start + 3, end); // Document markers, unless content follows on the same line
+        }
+
+        String key;
+        int colon;
+        if (first == '"' || first == '\'') {
+            int close = start + 1;
+            while (close < end && chars.get(close) != first) {
+                close++;
+            }
+            if (close == end || (first == '"' && indexOf(chars, '\\', start, close) >= 0)) {
+                return false; // Multi-line or escaped quoted key
+            }
+            key = chars.subSequence(start + 1 - chars.position(), close - chars.position()).toString();
+            colon = close + 1;
+            if (colon >= end || chars.get(colon) != ':') {
+                return false;
+            }
+        } else {
+            if ("-?{[&*!|>@`<".indexOf(first) >= 0) {
+                return false; // Root is not a block mapping with plain keys, or the key is complex, anchored or merged
+            }
+            colon = start;
+            while (colon < end && !(chars.get(colon) == ':' && (colon + 1 == end || chars.get(colon + 1) == ' ' || chars.get(colon + 1) == '\t'))) {
+                colon++;
+            }
+            if (colon == end) {
+                return false; // Not a key, e.g. a plain scalar continued in column 0
+            }
+            key = chars.subSequence(start - chars.position(), colon - chars.position()).toString().trim();
+        }
+
+        String path = PathNormalizer.normalize(key, false, true);
+        int separator = path.indexOf(PATH_SEPARATOR);
+        String segment = separator < 0 ? path : path.substring(0, separator);
+        if (segment.isEmpty()) {
+            return false;
+        }
+        keys.add(segment);
+        return true;
+    }
+
+    private static boolean startsWith(CharBuffer chars, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (chars.get(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(CharBuffer chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = chars.get(i);
+            if (c == '#') {
+                return true;
+            }
+            if (c != ' ' && c != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharBuffer chars, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
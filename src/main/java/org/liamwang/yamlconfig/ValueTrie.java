@@ -0,0 +1,280 @@
+package org.liamwang.yamlconfig;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Persistent hash array mapped trie from canonical config paths to values. Updates copy only the nodes on the path to
+ * the changed key, at most seven small arrays, and share every other node with the previous version, so building the
+ * next generation costs time and memory proportional to the number of changed keys rather than to the size of the
+ * config. Two versions are diffed by walking both and skipping every subtree they share.
+ *
+ * Each node holds key/value pairs packed by a bitmap of the 5-bit hash chunks in use; a null key marks a child node in
+ * the value position. Past the last chunk, keys whose hashes fully collide share a node holding a flat list of pairs.
+ */
+final class ValueTrie {
+
+    private static final int BITS_PER_LEVEL = 5;
+    private static final int HASH_BITS = 32;
+
+    static final ValueTrie EMPTY = new ValueTrie(Node.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private ValueTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value at the canonical path, or null if not present
+     */
+    ConfigValue get(String path) {
+        return get(root, hash(path), path, 0);
+    }
+
+    /**
+     * @return a trie with the value at the path, or this trie if the path already holds that instance
+     */
+    ValueTrie put(String path, ConfigValue value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = put(root, 0, hash(path), path, value, added);
+        return newRoot == root ? this : new ValueTrie(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return a trie without the path, or this trie if the path is not present
+     */
+    ValueTrie remove(String path) {
+        Node newRoot = remove(root, 0, hash(path), path);
+        return newRoot == root ? this : new ValueTrie(newRoot, size - 1);
+    }
+
+    /**
+     * Visits every path and value, in hash order.
+     */
+    void forEach(BiConsumer<String, ConfigValue> action) {
+        forEach(root, 0, action);
+    }
+
+    /**
+     * Reports each path whose value was added, removed or changed between a previous version and this one. Subtrees
+     * shared by both versions are skipped without being visited, so diffing two versions built from each other with few
+     * updates takes time proportional to the number of updates.
+     */
+    void diff(ValueTrie previous, Consumer<String> changedPaths) {
+        diff(root, previous.root, 0, changedPaths);
+    }
+
+    private static int hash(String path) {
+        int h = path.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitOf(int hash, int shift) {
+        return 1 << ((hash >>> shift) & ((1 << BITS_PER_LEVEL) - 1));
+    }
+
+    private static int indexOf(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private static boolean sameKey(Object key, String path) {
+        return key == path || path.equals(key); // Canonical paths are interned, so this is usually a reference check
+    }
+
+    private static ConfigValue get(Node node, int hash, String path, int shift) {
+        while (shift < HASH_BITS) {
+            int bit = bitOf(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            int index = 2 * indexOf(node.bitmap, bit);
+            Object key = node.array[index];
+            if (key != null) {
+                return sameKey(key, path) ? (ConfigValue) node.array[index + 1] : null;
+            }
+            node = (Node) node.array[index + 1];
+            shift += BITS_PER_LEVEL;
+        }
+        for (int i = 0; i < node.array.length; i += 2) { // Collision node
+            if (sameKey(node.array[i], path)) {
+                return (ConfigValue) node.array[i + 1];
+            }
+        }
+        return null;
+    }
+
+    private static Node put(Node node, int shift, int hash, String path, ConfigValue value, boolean[] added) {
+        if (shift >= HASH_BITS) {
+            for (int i = 0; i < node.array.length; i += 2) {
+                if (sameKey(node.array[i], path)) {
+                    return node.array[i + 1] == value ? node : node.with(i + 1, value);
+                }
+            }
+            added[0] = true;
+            return node.inserted(node.bitmap, node.array.length, path, value);
+        }
+        int bit = bitOf(hash, shift);
+        int index = 2 * indexOf(node.bitmap, bit);
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            return node.inserted(node.bitmap | bit, index, path, value);
+        }
+        Object key = node.array[index];
+        Object current = node.array[index + 1];
+        if (key == null) {
+            Node child = put((Node) current, shift + BITS_PER_LEVEL, hash, path, value, added);
+            return child == current ? node : node.with(index + 1, child);
+        }
+        if (sameKey(key, path)) {
+            return current == value ? node : node.with(index + 1, value);
+        }
+        added[0] = true;
+        Node child = put(Node.EMPTY, shift + BITS_PER_LEVEL, hash((String) key), (String) key, (ConfigValue) current, new boolean[1]);
+        child = put(child, shift + BITS_PER_LEVEL, hash, path, value, new boolean[1]);
+        return node.withChild(index, child);
+    }
+
+    private static Node remove(Node node, int shift, int hash, String path) {
+        if (shift >= HASH_BITS) {
+            for (int i = 0; i < node.array.length; i += 2) {
+                if (sameKey(node.array[i], path)) {
+                    return node.removed(node.bitmap, i);
+                }
+            }
+            return node;
+        }
+        int bit = bitOf(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = 2 * indexOf(node.bitmap, bit);
+        Object key = node.array[index];
+        if (key == null) {
+            Node child = (Node) node.array[index + 1];
+            Node newChild = remove(child, shift + BITS_PER_LEVEL, hash, path);
+            if (newChild == child) {
+                return node;
+            }
+            return newChild.array.length == 0 ? node.removed(node.bitmap & ~bit, index) : node.with(index + 1, newChild);
+        }
+        return sameKey(key, path) ? node.removed(node.bitmap & ~bit, index) : node;
+    }
+
+    private static void forEach(Node node, int shift, BiConsumer<String, ConfigValue> action) {
+        for (int i = 0; i < node.array.length; i += 2) {
+            if (node.array[i] == null && shift < HASH_BITS) {
+                forEach((Node) node.array[i + 1], shift + BITS_PER_LEVEL, action);
+            } else {
+                action.accept((String) node.array[i], (ConfigValue) node.array[i + 1]);
+            }
+        }
+    }
+
+    private static void diff(Node node, Node previous, int shift, Consumer<String> changedPaths) {
+        if (node == previous) {
+            return; // Shared subtree
+        }
+        if (shift >= HASH_BITS) {
+            diffEntries(node, previous, shift, changedPaths);
+            return;
+        }
+        int bits = node.bitmap | previous.bitmap;
+        while (bits != 0) {
+            int bit = Integer.lowestOneBit(bits);
+            bits &= ~bit;
+            boolean inNode = (node.bitmap & bit) != 0;
+            boolean inPrevious = (previous.bitmap & bit) != 0;
+            int index = inNode ? 2 * indexOf(node.bitmap, bit) : -1;
+            int previousIndex = inPrevious ? 2 * indexOf(previous.bitmap, bit) : -1;
+            Object key = inNode ? node.array[index] : null;
+            Object previousKey = inPrevious ? previous.array[previousIndex] : null;
+            if (inNode && inPrevious && key == null && previousKey == null) {
+                diff((Node) node.array[index + 1], (Node) previous.array[previousIndex + 1], shift + BITS_PER_LEVEL, changedPaths);
+            } else if (inNode && inPrevious && key != null && previousKey != null && sameKey(key, (String) previousKey)) {
+                if (!((ConfigValue) node.array[index + 1]).sameValue((ConfigValue) previous.array[previousIndex + 1])) {
+                    changedPaths.accept((String) key);
+                }
+            } else { // Pairs and subtrees in the same position, or only one side present
+                Node slot = inNode ? slotOf(node, index, bit) : Node.EMPTY;
+                Node previousSlot = inPrevious ? slotOf(previous, previousIndex, bit) : Node.EMPTY;
+                diffEntries(slot, previousSlot, shift, changedPaths);
+            }
+        }
+    }
+
+    /**
+     * @return a node at the same level holding only the pair or subtree at the index
+     */
+    private static Node slotOf(Node node, int index, int bit) {
+        return new Node(bit, new Object[] {node.array[index], node.array[index + 1]});
+    }
+
+    /**
+     * Diffs two nodes by looking up each of their entries in the other, for nodes whose shapes differ.
+     */
+    private static void diffEntries(Node node, Node previous, int shift, Consumer<String> changedPaths) {
+        forEach(node, shift, (path, value) -> {
+            ConfigValue previousValue = get(previous, hash(path), path, shift);
+            if (previousValue == null || !value.sameValue(previousValue)) {
+                changedPaths.accept(path);
+            }
+        });
+        forEach(previous, shift, (path, value) -> {
+            if (get(node, hash(path), path, shift) == null) {
+                changedPaths.accept(path);
+            }
+        });
+    }
+
+    private static final class Node {
+
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        final int bitmap; // Unused in collision nodes
+        final Object[] array; // Key/value pairs, a null key marks a child node in the value position
+
+        Node(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        Node with(int index, Object element) {
+            Object[] newArray = array.clone();
+            newArray[index] = element;
+            return new Node(bitmap, newArray);
+        }
+
+        /**
+         * @return a copy with the pair at the index replaced by a child node
+         */
+        Node withChild(int index, Node child) {
+            Object[] newArray = array.clone();
+            newArray[index] = null;
+            newArray[index + 1] = child;
+            return new Node(bitmap, newArray);
+        }
+
+        Node inserted(int newBitmap, int index, String key, ConfigValue value) {
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            newArray[index] = key;
+            newArray[index + 1] = value;
+            System.arraycopy(array, index, newArray, index + 2, array.length - index);
+            return new Node(newBitmap, newArray);
+        }
+
+        Node removed(int newBitmap, int index) {
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            return new Node(newBitmap, newArray);
+        }
+    }
+}
@@ -6,7 +6,9 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -16,17 +18,34 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
-public class WatchDir {
+/**
+ * Watches a directory tree and reports created, modified and deleted files. Events can be processed on a dedicated
+ * thread with {@link #processEvents()} or polled with a timeout from a shared executor with {@link #poll(long,
+ * TimeUnit)}, or the watcher can register with a {@link YamlConfigContext} whose watch service is shared by many
+ * watchers and polled for them. When the watch service overflows, the tree is rescanned and changes are detected by
+ * modification time.
+ */
+public class WatchDir implements Closeable {
 
-    private final WatchService watcher;
+    private final WatchService watcher; // null when registered with a shared context
+    private final YamlConfigContext context; // null when the watcher owns its watch service
     private final Map<WatchKey, Path> keys;
+    private final Map<Path, Long> lastModifiedTimes; // Maps every known regular file to its last modification time
+    private final Path root;
     private final boolean recursive;
     private boolean trace = false;
 
+    @SuppressWarnings("unchecked")
+    static final WatchEvent.Kind<Path>[] WATCH_EVENT_KINDS = new WatchEvent.Kind[]{ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY};
+
     @SuppressWarnings("unchecked")
     static <T> WatchEvent<T> cast(WatchEvent<?> event) {
         return (WatchEvent<T>) event;
@@ -36,7 +55,7 @@ public class WatchDir {
      * Register the given directory with the WatchService
      */
     private void register(Path dir) throws IOException {
-        WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        WatchKey key = context != null ? context.register(dir, this) : dir.register(watcher, WATCH_EVENT_KINDS);
         if (trace) {
             Path prev = keys.get(key);
             if (prev == null) {
@@ -67,10 +86,30 @@ public class WatchDir {
 
     /**
      * Creates a WatchService and registers the given directory
+     *
+     * @param pathConsumer receives the kind ({@code ENTRY_CREATE}, {@code ENTRY_MODIFY} or {@code ENTRY_DELETE}) and
+     * path of each changed file
      */
-    WatchDir(Path dir, boolean recursive, Consumer<Path> pathConsumer) throws IOException {
-        this.watcher = FileSystems.getDefault().newWatchService();
+    WatchDir(Path dir, boolean recursive, BiConsumer<WatchEvent.Kind<Path>, Path> pathConsumer) throws IOException {
+        this(FileSystems.getDefault().newWatchService(), null, dir, recursive, pathConsumer);
+    }
+
+    /**
+     * Registers the given directory with the context's shared watch service, which delivers its events. {@link
+     * #processEvents()} and {@link #poll(long, TimeUnit)} must not be used on a shared watcher.
+     */
+    WatchDir(YamlConfigContext context, Path dir, boolean recursive, BiConsumer<WatchEvent.Kind<Path>, Path> pathConsumer)
+        throws IOException {
+        this(null, context, dir, recursive, pathConsumer);
+    }
+
+    private WatchDir(WatchService watcher, YamlConfigContext context, Path dir, boolean recursive,
+        BiConsumer<WatchEvent.Kind<Path>, Path> pathConsumer) throws IOException {
+        this.watcher = watcher;
+        this.context = context;
         this.keys = new HashMap<WatchKey, Path>();
+        this.lastModifiedTimes = new HashMap<>();
+        this.root = dir;
         this.recursive = recursive;
 
         if (recursive) {
@@ -78,6 +117,7 @@ public class WatchDir {
         } else {
             register(dir);
         }
+        scanFiles(dir, lastModifiedTimes);
 
         this.pathConsumer = pathConsumer;
 
@@ -85,10 +125,10 @@ public class WatchDir {
         this.trace = true;
     }
 
-    private Consumer<Path> pathConsumer;
+    private final BiConsumer<WatchEvent.Kind<Path>, Path> pathConsumer;
 
     /**
-     * Process all events for keys queued to the watcher
+     * Process all events for keys queued to the watcher until it is closed
      */
     void processEvents() {
         for (; ; ) {
@@ -97,58 +137,191 @@ public class WatchDir {
             WatchKey key;
             try {
                 key = watcher.take();
-            } catch (InterruptedException x) {
+            } catch (InterruptedException | ClosedWatchServiceException x) {
                 return;
             }
 
-            Path dir = keys.get(key);
-            if (dir == null) {
-                continue;
+            if (!processKey(key)) {
+                break;
             }
+        }
+    }
 
-            for (WatchEvent<?> event : key.pollEvents()) {
-                WatchEvent.Kind kind = event.kind();
-
-                // TBD - provide example of how OVERFLOW event is handled
-                if (kind == OVERFLOW) {
-                    continue;
+    /**
+     * Process every key that is signalled within the timeout without blocking longer than that, so the watcher can
+     * share a thread with other work.
+     *
+     * @param timeout how long to wait for the first key, 0 to only process keys that are already signalled
+     * @param unit unit of the timeout
+     * @return false if the watcher was closed or all directories became inaccessible
+     */
+    boolean poll(long timeout, TimeUnit unit) {
+        try {
+            WatchKey key = watcher.poll(timeout, unit);
+            while (key != null) {
+                if (!processKey(key)) {
+                    return false;
                 }
+                key = watcher.poll();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        }
+    }
 
-                // Context for directory entry event is the file name of entry
-                WatchEvent<Path> ev = cast(event);
-                Path name = ev.context();
-                Path child = dir.resolve(name);
+    /**
+     * @return false if all directories are inaccessible
+     */
+    private boolean processKey(WatchKey key) {
+        processEvents(key, key.pollEvents());
+        return key.reset() || keyInvalidated(key);
+    }
 
-                // print out event
-//                System.out.format("%s: %s\n", event.kind().name(), child);
+    /**
+     * Reports the events of one signalled key, which the caller resets afterwards.
+     */
+    synchronized void processEvents(WatchKey key, List<WatchEvent<?>> events) {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            return;
+        }
 
-                if (kind == ENTRY_CREATE || kind == ENTRY_MODIFY) {
-                    pathConsumer.accept(child);
-                }
+        for (WatchEvent<?> event : events) {
+            WatchEvent.Kind<?> kind = event.kind();
 
-                // if directory is created, and watching recursively, then
-                // register it and its sub-directories
-                if (recursive && (kind == ENTRY_CREATE)) {
-                    try {
-                        if (Files.isDirectory(child, NOFOLLOW_LINKS)) {
-                            registerAll(child);
-                        }
-                    } catch (IOException x) {
-                        // ignore to keep sample readbale
+            if (kind == OVERFLOW) {
+                rescan();
+                continue;
+            }
+
+            // Context for directory entry event is the file name of entry
+            WatchEvent<Path> ev = cast(event);
+            Path name = ev.context();
+            Path child = dir.resolve(name);
+
+            // print out event
+//            System.out.format("%s: %s\n", event.kind().name(), child);
+
+            if (kind == ENTRY_DELETE) {
+                fileDeleted(child);
+            } else if (Files.isRegularFile(child, NOFOLLOW_LINKS)) {
+                lastModifiedTimes.put(child, lastModifiedTime(child));
+                pathConsumer.accept(ev.kind(), child);
+            }
+
+            // if directory is created, and watching recursively, then
+            // register it and its sub-directories and report the files already in it
+            if (recursive && (kind == ENTRY_CREATE)) {
+                try {
+                    if (Files.isDirectory(child, NOFOLLOW_LINKS)) {
+                        registerAll(child);
+                        Map<Path, Long> newFiles = new HashMap<>();
+                        scanFiles(child, newFiles);
+                        lastModifiedTimes.putAll(newFiles);
+                        newFiles.keySet().forEach(path -> pathConsumer.accept(ENTRY_CREATE, path));
                     }
+                } catch (IOException x) {
+                    // ignore to keep sample readbale
                 }
             }
+        }
+    }
 
-            // reset key and remove from set if directory no longer accessible
-            boolean valid = key.reset();
-            if (!valid) {
-                keys.remove(key);
+    /**
+     * Forgets a key that could not be reset because its directory is no longer accessible.
+     *
+     * @return false if all directories are inaccessible
+     */
+    synchronized boolean keyInvalidated(WatchKey key) {
+        keys.remove(key);
+        return !keys.isEmpty();
+    }
+
+    /**
+     * Reports the deleted path, or every known file under it if it was a directory.
+     */
+    private void fileDeleted(Path path) {
+        List<Path> deleted = new ArrayList<>();
+        for (Iterator<Path> iterator = lastModifiedTimes.keySet().iterator(); iterator.hasNext(); ) {
+            Path file = iterator.next();
+            if (file.startsWith(path)) {
+                iterator.remove();
+                deleted.add(file);
+            }
+        }
+        deleted.forEach(file -> pathConsumer.accept(ENTRY_DELETE, file));
+    }
+
+    /**
+     * Recovers from an overflow, where events were dropped, by walking the whole tree and comparing modification times
+     * with the last known ones.
+     */
+    private void rescan() {
+        Map<Path, Long> currentFiles = new HashMap<>();
+        try {
+            if (recursive) {
+                registerAll(root);
+            }
+            scanFiles(root, currentFiles);
+        } catch (IOException x) {
+            // ignore, files that could not be visited are reported as deleted
+        }
+        List<Path> deleted = new ArrayList<>(lastModifiedTimes.keySet());
+        deleted.removeAll(currentFiles.keySet());
+        deleted.forEach(file -> {
+            lastModifiedTimes.remove(file);
+            pathConsumer.accept(ENTRY_DELETE, file);
+        });
+        currentFiles.forEach((file, lastModified) -> {
+            Long previous = lastModifiedTimes.put(file, lastModified);
+            if (previous == null) {
+                pathConsumer.accept(ENTRY_CREATE, file);
+            } else if (!previous.equals(lastModified)) {
+                pathConsumer.accept(ENTRY_MODIFY, file);
+            }
+        });
+    }
 
-                // all directories are inaccessible
-                if (keys.isEmpty()) {
-                    break;
+    private void scanFiles(Path start, Map<Path, Long> files) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return recursive || dir.equals(start) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.put(file, attrs.lastModifiedTime().toMillis());
                 }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static long lastModifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file, NOFOLLOW_LINKS).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Stops watching. Any thread blocked in {@link #processEvents()} returns.
+     */
+    @Override
+    public void close() throws IOException {
+        if (context != null) {
+            synchronized (this) {
+                context.unregister(this, new ArrayList<>(keys.keySet()));
             }
+        } else {
+            watcher.close();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,21 @@
 package org.liamwang.yamlconfig;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class YamlConfig {
 
     public static YamlConfigPrefix instance;
 
+    /**
+     * Reads the config of the default manager, which watches the "deploy" folder. Use {@link YamlConfigManager#builder()}
+     * for a manager with its own root folder or robot name, e.g. one per simulated robot, and read it through {@link
+     * YamlConfigManager#getEntry(String)} and {@link YamlConfigManager#getPrefix(String)}.
+     */
     public static YamlConfigEntry getEntry(String prefix) {
         if (instance == null) {
             instance = new YamlConfigPrefix("", YamlConfigManager.getInstance());
@@ -14,4 +26,125 @@ public class YamlConfig {
     public static YamlConfigPrefix getPrefix(String prefix) {
         return new YamlConfigPrefix(prefix, YamlConfigManager.getInstance());
     }
-}
\ No newline at end of file
+
+    /**
+     * Only parses a config file once a path under one of its top-level keys is first read, instead of parsing every file
+     * at startup. Must be called before the first config access.
+     */
+    public static void setLazyLoading(boolean lazyLoading) {
+        YamlConfigManager.setLazyLoading(lazyLoading);
+    }
+
+    /**
+     * @param quietPeriodMillis how long to wait after the last file change before reloading
+     * @param maxLatencyMillis longest a file change waits for a reload while changes keep arriving
+     */
+    public static void setReloadTiming(long quietPeriodMillis, long maxLatencyMillis) {
+        YamlConfigManager.getInstance().setReloadTiming(quietPeriodMillis, maxLatencyMillis);
+    }
+
+    /**
+     * @param parallelism number of threads to parse changed config files on, 1 to parse them serially on the reload
+     * thread, which is the default. Worth raising on a multi-core machine with many large files.
+     */
+    public static void setParseParallelism(int parallelism) {
+        YamlConfigManager.getInstance().setParseParallelism(parallelism);
+    }
+
+    /**
+     * @return time from the first file change of the last burst until its reload finished
+     */
+    public static long getLastReloadLatencyMillis() {
+        return YamlConfigManager.getInstance().getReloadScheduler().getLastReloadLatencyMillis();
+    }
+
+    /**
+     * @return number of file change events that were folded into an already pending reload
+     */
+    public static long getCoalescedEventCount() {
+        return YamlConfigManager.getInstance().getReloadScheduler().getCoalescedEventCount();
+    }
+
+    /**
+     * @return reload, parse, listener and read metrics of the config
+     */
+    public static ConfigMetrics getMetrics() {
+        return YamlConfigManager.getInstance().getMetrics();
+    }
+
+    /**
+     * Logs a short metrics summary, including the most read entries, at info level.
+     *
+     * @param periodMillis how often to log the summary, 0 to stop
+     */
+    public static void setMetricsLogPeriod(long periodMillis) {
+        YamlConfigManager.getInstance().setMetricsLogPeriod(periodMillis);
+    }
+
+    /**
+     * @param printConfig whether to log every config value after each reload, off by default
+     */
+    public static void setPrintConfigOnReload(boolean printConfig) {
+        YamlConfigManager.getInstance().setPrintConfigOnReload(printConfig);
+    }
+
+    /**
+     * @return execution times of every registered listener, to find listeners that slow down config updates
+     */
+    public static List<ListenerStats> getListenerStats() {
+        return YamlConfigManager.getInstance().getListenerStats();
+    }
+
+    /**
+     * Streams the values that change under a prefix, one batch per reload, for bridges that log or forward config
+     * updates. Subscribers are signalled on the common fork-join pool and never block reloads.
+     *
+     * @param prefix prefix to filter changes by, "" for every change
+     */
+    public static Flow.Publisher<ConfigChangeBatch> getChangePublisher(String prefix) {
+        return YamlConfigManager.getInstance().getChangePublisher(prefix);
+    }
+
+    /**
+     * @return the current config generation, to roll back to later
+     */
+    public static long getGeneration() {
+        return YamlConfigManager.getInstance().getGeneration();
+    }
+
+    /**
+     * Restores the values of an earlier generation without touching the config files, e.g. after deploying a bad
+     * tuning file. Lasts until the next config file change.
+     *
+     * @see YamlConfigManager#rollback(long)
+     */
+    public static long rollback(long generation) {
+        return YamlConfigManager.getInstance().rollback(generation);
+    }
+
+    /**
+     * Starts a loopback server for setting values of the default manager at runtime, e.g. from a tuning dashboard.
+     *
+     * @see YamlConfigManager#startServer(int)
+     */
+    public static ConfigServer startServer(int port) throws IOException {
+        return YamlConfigManager.getInstance().startServer(port);
+    }
+
+    /**
+     * Creates an executor for listeners that starts a virtual thread per task when the runtime supports them (Java 21
+     * and later), and otherwise falls back to a cached pool of daemon threads.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "yaml-config-listener-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
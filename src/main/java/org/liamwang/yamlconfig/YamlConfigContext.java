@@ -0,0 +1,141 @@
+package org.liamwang.yamlconfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * Threads and file watching shared by several config managers, e.g. one per simulated robot. Reloads of every manager
+ * run on one scheduled pool, and every config folder is watched through one watch service polled from that pool, so N
+ * managers do not cost N blocking threads.
+ */
+public final class YamlConfigContext implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(YamlConfigContext.class);
+
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Map<WatchKey, List<WatchDir>> watchKeyOwners = new ConcurrentHashMap<>(); // Several managers may watch one folder
+
+    private WatchService watchService; // Guarded by this, created when the first folder is watched
+    private ScheduledFuture<?> watchTask;
+
+    /**
+     * @param reloadThreads number of threads to run reloads and watch polling on
+     */
+    public YamlConfigContext(int reloadThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(reloadThreads, runnable -> {
+            Thread thread = new Thread(runnable, "yaml-config-reload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ownsExecutor = true;
+    }
+
+    /**
+     * @param executor executor to run reloads and watch polling on, left running when the context is closed
+     */
+    public YamlConfigContext(ScheduledExecutorService executor) {
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Registers a directory with the shared watch service on behalf of a watcher.
+     */
+    synchronized WatchKey register(Path dir, WatchDir owner) throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            watchTask = executor.scheduleWithFixedDelay(this::pollWatchService, YamlConfigManager.WATCH_POLL_PERIOD,
+                YamlConfigManager.WATCH_POLL_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        WatchKey key = dir.register(watchService, WatchDir.WATCH_EVENT_KINDS);
+        List<WatchDir> owners = watchKeyOwners.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>());
+        if (!owners.contains(owner)) {
+            owners.add(owner);
+        }
+        return key;
+    }
+
+    /**
+     * Stops delivering events to a watcher, cancelling keys no other watcher uses.
+     */
+    synchronized void unregister(WatchDir owner, Collection<WatchKey> keys) {
+        for (WatchKey key : keys) {
+            List<WatchDir> owners = watchKeyOwners.get(key);
+            if (owners != null && owners.remove(owner) && owners.isEmpty()) {
+                watchKeyOwners.remove(key);
+                key.cancel();
+            }
+        }
+    }
+
+    /**
+     * Hands the events of every signalled key to each watcher of its directory without blocking.
+     */
+    private void pollWatchService() {
+        WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+        try {
+            for (WatchKey key = service.poll(); key != null; key = service.poll()) {
+                processKey(key);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed with the context
+        }
+    }
+
+    private void processKey(WatchKey key) {
+        List<WatchEvent<?>> events = key.pollEvents();
+        List<WatchDir> owners = watchKeyOwners.getOrDefault(key, Collections.emptyList());
+        owners.forEach(owner -> owner.processEvents(key, events));
+        if (!key.reset()) {
+            watchKeyOwners.remove(key);
+            owners.forEach(owner -> {
+                if (!owner.keyInvalidated(key)) {
+                    logger.warn("Config folder is no longer accessible");
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops watching every folder, and stops the reload threads if the context created them.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchTask != null) {
+            watchTask.cancel(false);
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+}
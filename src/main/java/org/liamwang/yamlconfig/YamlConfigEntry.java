@@ -1,22 +1,264 @@
 package org.liamwang.yamlconfig;
 
+import java.nio.DoubleBuffer;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 public class YamlConfigEntry {
 
-    private final String path;
+    private final String path; // Canonical path id, resolved once at construction
+    private final YamlConfigManager manager;
+    private final LongAdder readCounter; // Striped, so concurrent readers do not contend
+    private volatile ValueBinding binding = new ValueBinding(ConfigSnapshot.EMPTY, ConfigValue.NONE, false);
 
     public YamlConfigEntry(String path) {
-        this.path = path;
+        this(path, YamlConfigManager.getInstance());
+    }
+
+    public YamlConfigEntry(String path, YamlConfigManager manager) {
+        this.path = PathNormalizer.canonicalId(path);
+        this.manager = manager;
+        this.readCounter = manager.getMetrics().readCounter(this.path);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Reads the value as a primitive double without allocating. The value of this entry is resolved once per config
+     * generation and reused until the next reload.
+     *
+     * @param defaultValue value to return if the entry is not present or not a number
+     */
+    public double getAsDouble(double defaultValue) {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getDouble(defaultValue);
     }
 
     public Double getDouble(double defaultValue) {
-        Double num = getDoubleOrNull();
-        return num == null ? defaultValue : num;
+        return getAsDouble(defaultValue);
     }
 
     public Double getDoubleOrNull() {
-        return YamlConfigManager.getInstance().getDouble(path);
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.isNumber() ? b.value.getDouble(0) : null;
+    }
+
+    /**
+     * @param defaultValue value to return if the entry is not present or not a whole number in int range, so 2.7 or
+     * 2^40 read as the default rather than truncated or wrapped
+     */
+    public int getInt(int defaultValue) {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getInt(defaultValue);
+    }
+
+    /**
+     * @param defaultValue value to return if the entry is not present or not a whole number in long range
+     */
+    public long getLong(long defaultValue) {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getLong(defaultValue);
+    }
+
+    public boolean getBoolean(boolean defaultValue) {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getBoolean(defaultValue);
+    }
+
+    public String getString(String defaultValue) {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getString(defaultValue);
+    }
+
+    /**
+     * @param defaultValue value to return if the entry is not present or not a list of numbers
+     * @return a copy of the list of numbers at this entry
+     */
+    public double[] getDoubleArray(double[] defaultValue) {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getDoubleArray(defaultValue); // Already a copy of the off-heap list
+    }
+
+    /**
+     * @return a read-only view of the list, or of the row-major table, at this entry, backed by the snapshot's off-heap
+     * buffer, or null if the entry is not a list or table. The view keeps showing the generation it was taken from.
+     */
+    public DoubleBuffer getDoubleBuffer() {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getDoubleBuffer();
+    }
+
+    /**
+     * @return number of rows of the table at this entry, 0 if the entry is not a table
+     */
+    public int getTableRows() {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getTableRows();
+    }
+
+    /**
+     * @return number of columns of the table at this entry, 0 if the entry is not a table
+     */
+    public int getTableColumns() {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getTableColumns();
+    }
+
+    public double getTableValue(int row, int column, double defaultValue) {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.getTableValue(row, column, defaultValue);
+    }
+
+    /**
+     * Interpolates the second column of a lookup table whose first column holds ascending x values, e.g. a shooter's
+     * RPM against distance. Does not allocate.
+     *
+     * @param defaultValue value to return if the entry is not a table with at least two columns
+     */
+    public double interpolate(double x, double defaultValue) {
+        return interpolate(x, 1, defaultValue);
+    }
+
+    /**
+     * Binary searches the first column of a lookup table for x and linearly interpolates the given column, clamping to
+     * the first and last rows outside the table. Does not allocate.
+     *
+     * @param column column to interpolate, at least 1
+     * @param defaultValue value to return if the entry is not a table with the column
+     */
+    public double interpolate(double x, int column, double defaultValue) {
+        ValueBinding b = bind(manager.getSnapshot());
+        return b.value.interpolate(x, column, defaultValue);
+    }
+
+    /**
+     * Reads the value as it was in an earlier generation, e.g. to compare a value against the one before a reload.
+     *
+     * @param generation generation to read, between {@link YamlConfigManager#getOldestGeneration()} and the current one
+     * @throws IllegalArgumentException if the generation is no longer in the history
+     */
+    public double getAsDoubleAsOf(long generation, double defaultValue) {
+        return manager.getSnapshot(generation).getValue(path).getDouble(defaultValue);
+    }
+
+    /**
+     * @see #getAsDoubleAsOf(long, double)
+     */
+    public long getLongAsOf(long generation, long defaultValue) {
+        return manager.getSnapshot(generation).getValue(path).getLong(defaultValue);
+    }
+
+    /**
+     * @see #getAsDoubleAsOf(long, double)
+     */
+    public boolean getBooleanAsOf(long generation, boolean defaultValue) {
+        return manager.getSnapshot(generation).getValue(path).getBoolean(defaultValue);
+    }
+
+    /**
+     * @see #getAsDoubleAsOf(long, double)
+     */
+    public String getStringAsOf(long generation, String defaultValue) {
+        return manager.getSnapshot(generation).getValue(path).getString(defaultValue);
+    }
+
+    /**
+     * Sets the value in the robot's tuned values file, e.g. from an autotuning routine. The new value is readable and its
+     * listeners run as soon as this returns, while the file is written in the background, batched with other values set
+     * before the write starts. The tuned values file is generated and layered above the robot's override files, so the
+     * hand-maintained config files are never rewritten.
+     *
+     * This never reads a file, since the tuned values file is read when the config loads, but it waits for a running
+     * reload to finish, and inline listeners of the value run on the calling thread before it returns. A control loop
+     * setting values should register its listeners with an executor.
+     *
+     * @return the config generation holding the new value
+     * @throws IllegalStateException if the tuned values file cannot be parsed
+     * @see YamlConfigManager.Builder#tunedValuesFileName(String)
+     * @see YamlConfigPrefix#set(java.util.Map)
+     */
+    public long set(double value) {
+        return manager.setValues(Collections.singletonMap(path, value));
+    }
+
+    /**
+     * @see #set(double)
+     */
+    public long set(long value) {
+        return manager.setValues(Collections.singletonMap(path, value));
+    }
+
+    /**
+     * @see #set(double)
+     */
+    public long set(boolean value) {
+        return manager.setValues(Collections.singletonMap(path, value));
+    }
+
+    /**
+     * @see #set(double)
+     */
+    public long set(String value) {
+        return manager.setValues(Collections.singletonMap(path, value));
+    }
+
+    /**
+     * Sets a list of numbers, copying the array.
+     *
+     * @see #set(double)
+     */
+    public long set(double[] value) {
+        return manager.setValues(Collections.singletonMap(path, value.clone()));
+    }
+
+    /**
+     * Sets a table of numbers, copying the array.
+     *
+     * @throws IllegalArgumentException if the rows are not all the same length
+     * @see #set(double)
+     */
+    public long set(double[][] value) {
+        double[][] table = new double[value.length][];
+        for (int row = 0; row < value.length; row++) {
+            if (value[row].length != value[0].length) {
+                throw new IllegalArgumentException("Table rows at " + path + " are not all the same length");
+            }
+            table[row] = value[row].clone();
+        }
+        return manager.setValues(Collections.singletonMap(path, table));
+    }
+
+    /**
+     * Removes the value from the robot's tuned values file, so the value from the other config files shows again.
+     *
+     * @return the config generation without the value
+     * @see #set(double)
+     */
+    public long remove() {
+        return manager.setValues(Collections.singletonMap(path, null));
+    }
+
+    private ValueBinding bind(ConfigSnapshot current) {
+        readCounter.increment();
+        ValueBinding b = binding;
+        if (b.snapshot != current) { // Generation changed, resolve the value again
+            ConfigValue value = current.getValue(path);
+            boolean subtreeLoaded = b.subtreeLoaded;
+            if (!value.isPresent() && !subtreeLoaded) {
+                if (manager.loadSubtree(path)) { // First read under a lazily loaded subtree
+                    current = manager.getSnapshot();
+                    value = current.getValue(path);
+                }
+                subtreeLoaded = true; // Later generations of a missing value do not ask the manager again
+            }
+            b = new ValueBinding(current, value, subtreeLoaded);
+            binding = b;
+        }
+        return b;
     }
 
     /**
@@ -30,6 +272,39 @@ public class YamlConfigEntry {
         if (runOnce) {
             onChange.accept(this);
         }
-        YamlConfigManager.getInstance().registerPathListener(path, () -> onChange.accept(this));
+        manager.registerPathListener(path, () -> onChange.accept(this));
+    }
+
+    /**
+     * Registers a listener that runs on the given executor instead of the reload thread. If the listener falls behind,
+     * it runs once for the latest value rather than once per reload.
+     *
+     * @param executor executor to run the listener on, e.g. {@link YamlConfig#newVirtualThreadExecutor()}
+     */
+    public void registerListener(Executor executor, Consumer<YamlConfigEntry> onChange) {
+        registerListener(true, executor, onChange);
+    }
+
+    /**
+     * @param runOnce whether to run the listener once on the calling thread before registering it
+     */
+    public void registerListener(boolean runOnce, Executor executor, Consumer<YamlConfigEntry> onChange) {
+        if (runOnce) {
+            onChange.accept(this);
+        }
+        manager.registerPathListener(path, executor, () -> onChange.accept(this));
+    }
+
+    private static final class ValueBinding {
+
+        private final ConfigSnapshot snapshot;
+        private final ConfigValue value;
+        private final boolean subtreeLoaded; // Whether the lazily loaded subtree of the path was loaded by an earlier read
+
+        private ValueBinding(ConfigSnapshot snapshot, ConfigValue value, boolean subtreeLoaded) {
+            this.snapshot = snapshot;
+            this.value = value;
+            this.subtreeLoaded = subtreeLoaded;
+        }
     }
 }
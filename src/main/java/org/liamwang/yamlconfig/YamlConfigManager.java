@@ -1,21 +1,35 @@
 package org.liamwang.yamlconfig;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.log4j.Logger;
 import org.yaml.snakeyaml.Yaml;
@@ -32,71 +46,368 @@ public class YamlConfigManager implements Runnable {
     static final char PATH_SEPARATOR = '/';
 
     private static final String CONFIG_ROOT_FOLDER = "deploy";
-    private static final String CONFIG_META_FILE = "deploy/config-meta.yaml";
-    public static final int UPDATE_FREQUENCY_TIMEOUT = 300;
+    private static final String CONFIG_META_FILE_NAME = "config-meta.yaml"; // Meta file path relative to the root folder
+    private static final String CONFIG_SNAPSHOT_FILE_NAME = "config-snapshot.bin";
+    private static final String TUNED_VALUES_FILE_SUFFIX = "-tuned.yaml"; // Appended to the robot name by default
+    public static final int UPDATE_FREQUENCY_TIMEOUT = 300; // Quiet period after the last change before reloading
+    public static final int MAX_UPDATE_LATENCY = 1000; // Longest a change waits for a reload during a burst of changes
+    static final int WATCH_POLL_PERIOD = 50;
+    private static final int DEFAULT_HISTORY_SIZE = 16; // Generations kept for point-in-time reads and rollback
+    private static final long MODIFIED_TIME_RESOLUTION_MILLIS = 2000; // Coarsest file timestamps, on FAT file systems
+    private static final long UNKNOWN_MODIFIED_TIME = Long.MIN_VALUE; // Never matches a stat, so the file is hashed
 
     private static YamlConfigManager instance;
+    private static boolean lazyLoadingEnabled; // Applies to the instance created by the next getInstance()
 
-    static YamlConfigManager getInstance() {
+    static synchronized YamlConfigManager getInstance() {
         if (instance == null) {
-            instance = new YamlConfigManager();
+            instance = builder().lazyLoading(lazyLoadingEnabled).build();
         }
         return instance;
     }
 
-    private Map<String, List<String>> metaFileConfig = new LinkedHashMap<>(); // Maps category names to file path sets, key "" is reserved for primary config paths
-    private Map<String, Object> reducedConfigMap = new LinkedHashMap<>(); // Maps config paths to values
-    private Map<String, List<Runnable>> listenerMap = new LinkedHashMap<>(); // Maps config paths to listeners
+    static synchronized void setLazyLoading(boolean lazyLoading) {
+        if (instance != null && instance.lazyLoading != lazyLoading) {
+            logger.warn("Config is already loaded, lazy loading can only be changed before the first config access");
+        }
+        lazyLoadingEnabled = lazyLoading;
+    }
 
-    private YamlConfigManager() {
-        parseMetaFile();
-        updateAllFiles();
-        Thread yConfigThread = new Thread(this);
-        yConfigThread.start();
+    private volatile Map<String, List<String>> metaFileConfig = new LinkedHashMap<>(); // Maps category names to file path sets, key "" is reserved for primary config paths
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>(ConfigSnapshot.EMPTY); // Current generation of the reduced config
+    private final ConfigHistory history; // Recently published generations, including the current one
+    private ConfigSnapshot mergedSnapshot = ConfigSnapshot.EMPTY; // Values merged from the files by the last reload, unaffected by rollbacks
+    private List<Path> mergedLayerFiles = Collections.emptyList(); // Layer files of the last reload, in merge order
+    private List<Map<String, Object>> mergedLayers = Collections.emptyList(); // Values of each layer at the last merge, the in-memory overrides last
+    private volatile Map<String, Object> memoryOverrides = Collections.emptyMap(); // Layer above the robot overrides, replaced on each change
+    private final OverrideFile memoryOverridesFile; // Persists the in-memory overrides, null if they are not persisted
+    private final Map<Path, OverrideFile> writtenFiles = new ConcurrentHashMap<>(); // Files this manager writes, by absolute path
+    private ConfigServer server;
+    private final ListenerTrie listeners = new ListenerTrie(); // Entry and prefix listeners indexed by path segment
+    private final List<ConfigListener> registeredListeners = new CopyOnWriteArrayList<>(); // Every listener, in registration order
+    private final ChangeStream changeStream = new ChangeStream(); // Change batches for Flow subscribers
+
+    private SnapshotFile.Source metaFileSource; // Size and hash of the last parsed meta file
+    private SnapshotFile lastSnapshotFile; // Last snapshot loaded or queued for writing, to skip writes that change nothing
+    private final AtomicReference<SnapshotFile> pendingSnapshotFile = new AtomicReference<>(); // Cleared once written
+    private static final ThreadLocal<YamlFlattener> flatteners = ThreadLocal.withInitial(YamlFlattener::new); // Flatteners are not thread safe
+    private static final ThreadLocal<ConfigFileReader> fileReaders = ThreadLocal.withInitial(ConfigFileReader::new); // Neither are their read buffers
+    private ForkJoinPool parsePool; // Parses changed files in parallel, null to parse them serially on the reload thread
+    private final ConfigMetrics metrics = new ConfigMetrics();
+    private volatile boolean printConfigOnReload; // Logging every value is expensive on large configs, so it is opt-in
+    private ScheduledFuture<?> metricsLogTask;
+    private final boolean lazyLoading; // Whether files are only parsed once a path under one of their top-level keys is read
+    private final Set<String> loadedSubtrees = ConcurrentHashMap.newKeySet(); // Top-level keys read so far in lazy mode
+    private volatile boolean allSubtreesLoaded;
+    private final Map<Path, Set<String>> fileTopLevelKeys = new HashMap<>(); // Top-level keys of files not parsed yet, null if unknown
+    private final Map<Path, ConfigFile> fileCache = new HashMap<>(); // Maps absolute file paths to their parsed contribution
+    private final ReloadScheduler reloadScheduler;
+
+    private final YamlConfigContext context; // Shared threads and watch service, null if this manager has its own
+    private WatchDir watchDir;
+    private ScheduledFuture<?> watchTask; // Polls the watcher when it is not shared
+
+    private final Path rootFolder;
+    private final Path metaFile;
+    private final Path snapshotFile;
+    private final Path tunedValuesFile; // Generated layer above the robot's override files, holding values set from code
+    private boolean tunedValuesFileUnreadable; // Whether the tuned values file exists but could not be read by the last reload
+    private final String robotName;
+
+    /**
+     * @return a builder for a manager with its own root folder, robot name and threads, which by default reads the
+     * "deploy" folder for the robot named by {@link RobotIdentifier}
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
-    private boolean aboutToUpdate = false;
+    private YamlConfigManager(Builder builder) {
+        this.rootFolder = builder.rootFolder;
+        this.metaFile = rootFolder.resolve(builder.metaFileName);
+        this.snapshotFile = rootFolder.resolve(builder.snapshotFileName);
+        this.robotName = builder.robotName;
+        this.tunedValuesFile = toCacheKey(rootFolder.resolve(builder.tunedValuesFileName != null ? builder.tunedValuesFileName
+            : robotName + TUNED_VALUES_FILE_SUFFIX));
+        this.lazyLoading = builder.lazyLoading;
+        this.context = builder.context;
+        this.history = new ConfigHistory(builder.historySize);
+        this.reloadScheduler = context == null ? new ReloadScheduler(UPDATE_FREQUENCY_TIMEOUT, MAX_UPDATE_LATENCY, this::reload)
+            : new ReloadScheduler(context.getExecutor(), false, UPDATE_FREQUENCY_TIMEOUT, MAX_UPDATE_LATENCY, this::reload);
+        setParseParallelism(builder.parseParallelism);
+        this.memoryOverridesFile = builder.overridesFileName == null ? null
+            : new OverrideFile(rootFolder.resolve(builder.overridesFileName), reloadScheduler.getExecutor());
+        if (memoryOverridesFile != null) {
+            writtenFiles.put(toCacheKey(memoryOverridesFile.getPath()), memoryOverridesFile);
+            try {
+                memoryOverrides = Collections.unmodifiableMap(memoryOverridesFile.read());
+            } catch (IOException e) {
+                logger.error("Unable to read config overrides " + memoryOverridesFile.getPath() + ": " + e.toString());
+            }
+        }
+
+        boolean watch = builder.watch;
+        if (watch && !lazyLoading && memoryOverrides.isEmpty() && loadSnapshotFile()) {
+            // Values are readable already, parse the YAML in the background to populate the file cache
+            reloadScheduler.getExecutor().execute(() -> {
+                parseMetaFile();
+                reload(Collections.emptySet());
+            });
+        } else {
+            parseMetaFile();
+            reload(Collections.emptySet());
+        }
+        if (!watch) {
+            return;
+        }
+        try {
+            if (context != null) {
+                watchDir = new WatchDir(context, rootFolder, true, this::fileChanged);
+            } else {
+                watchDir = new WatchDir(rootFolder, true, this::fileChanged);
+                // Share the reload thread instead of blocking a dedicated watcher thread
+                watchTask = reloadScheduler.getExecutor().scheduleWithFixedDelay(this, WATCH_POLL_PERIOD, WATCH_POLL_PERIOD, TimeUnit.MILLISECONDS);
+            }
+            logger.debug("Configuration listener started!");
+        } catch (IOException e) {
+            logger.error("Unable to watch config folder " + rootFolder + ": " + e.toString());
+        }
+    }
 
+    /**
+     * Polls the config folder once for changes without blocking.
+     */
     @Override
     public void run() {
+        if (watchTask == null) {
+            return; // Not watching, or the shared context polls the watcher
+        }
+        if (!watchDir.poll(0, TimeUnit.MILLISECONDS)) {
+            logger.warn("Configuration listener stopped, config folder is no longer accessible");
+            watchTask.cancel(false);
+        }
+    }
+
+    private void fileChanged(WatchEvent.Kind<Path> kind, Path filePath) {
+        if (filePath.toString().endsWith("yaml")) {
+            Path path = toCacheKey(filePath);
+            OverrideFile writtenFile = writtenFiles.get(path);
+            if (writtenFile != null && isOwnWrite(path, writtenFile)) {
+                logger.debug("Ignoring own write: " + kind.name() + " " + filePath);
+                return;
+            }
+            logger.debug("Update received: " + kind.name() + " " + filePath);
+            reloadScheduler.fileChanged(path);
+        }
+    }
+
+    /**
+     * Checks whether a written file still holds what this manager wrote, whose values are already published, and if so
+     * records the written content so a later reload does not parse it again.
+     *
+     * @return false if the file was edited since, or was reloaded from older content before the write landed
+     */
+    private synchronized boolean isOwnWrite(Path path, OverrideFile writtenFile) {
+        OverrideFile.Write write = writtenFile.getLastWrite();
+        if (write == null) {
+            return false;
+        }
+        ConfigFile cached = fileCache.get(path);
+        if (cached != null && cached.getValues() == write.values) {
+            // Written just now, so an edit in the same timestamp could look unchanged: hash it on the next reload
+            fileCache.put(path, cached.withContent(UNKNOWN_MODIFIED_TIME, write.size, write.hash));
+            return true;
+        }
+        // Newer values are published and still being written, or the file is not a config layer
+        return writtenFile.hasPendingWrite() || !mergedLayerFiles.contains(path);
+    }
+
+    /**
+     * Parses the config folder and writes its binary snapshot without watching for changes.
+     */
+    static void compileSnapshotFile() {
+        builder().watch(false).build().shutdown();
+    }
+
+    /**
+     * Publishes the values from the binary snapshot if it was built for this robot from the current files.
+     *
+     * @return true if the snapshot was loaded
+     */
+    private boolean loadSnapshotFile() {
+        if (!Files.exists(snapshotFile)) {
+            return false;
+        }
         try {
-            logger.debug("Configuration listener started!");
-            new WatchDir(Paths.get(CONFIG_ROOT_FOLDER), true, filePath -> {
-                if (filePath.toString().endsWith("yaml")) {
-                    logger.debug("Update received: " + filePath);
-                    if (!aboutToUpdate) {
-                        aboutToUpdate = true;
-                        new Thread(() -> {
-                            try {
-                                Thread.sleep(UPDATE_FREQUENCY_TIMEOUT);
-                                parseMetaFile();
-                                updateAllFiles();
-                            } catch (InterruptedException e) {
-                                logger.error("Update timeout thread interrupted!");
-                            }
-                            aboutToUpdate = false;
-                        }).start();
-                    } else {
-                        logger.debug("Update canceled because timeout already running!");
-                    }
-                }
-            }).processEvents(); // Start watching for updates
+            SnapshotFile compiledSnapshot = SnapshotFile.read(snapshotFile);
+            if (!compiledSnapshot.getRobotName().equals(robotName) || !compiledSnapshot.isUpToDate(rootFolder)) {
+                logger.debug("Config snapshot is out of date, parsing YAML files");
+                return false;
+            }
+            lastSnapshotFile = compiledSnapshot;
+            publish(compiledSnapshot.getValues().withGeneration(1));
+            logger.debug("Loaded config snapshot " + snapshotFile);
+            return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.warn("Unable to read config snapshot: " + e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Queues a write of the binary snapshot on the reload executor if its sources or values changed since the last one.
+     * Writes queued while one is pending are coalesced into a write of the latest snapshot, like {@link OverrideFile}.
+     */
+    private void writeSnapshotFile(List<Path> layerFiles, ConfigSnapshot newSnapshot) {
+        if (metaFileSource == null) {
+            return;
+        }
+        Path rootPath = toCacheKey(rootFolder);
+        List<SnapshotFile.Source> sources = new ArrayList<>();
+        sources.add(metaFileSource);
+        for (Path path : layerFiles) {
+            ConfigFile configFile = fileCache.get(path);
+            String relativePath = rootPath.relativize(path).toString().replace(File.separatorChar, PATH_SEPARATOR);
+            // A missing file is recorded too, so the snapshot goes stale once it is created, e.g. the tuned values file
+            sources.add(configFile != null ? new SnapshotFile.Source(relativePath, configFile.getSize(), configFile.getHash())
+                : SnapshotFile.Source.missing(relativePath));
+        }
+        if (lastSnapshotFile != null && lastSnapshotFile.getSources().equals(sources)
+            && newSnapshot.changedPathsSince(lastSnapshotFile.getValues()).isEmpty()) {
+            return;
+        }
+        lastSnapshotFile = new SnapshotFile(robotName, sources, newSnapshot);
+        if (pendingSnapshotFile.getAndSet(lastSnapshotFile) == null) {
+            reloadScheduler.getExecutor().execute(this::flushSnapshotFile);
+        }
+    }
+
+    /**
+     * Writes any pending snapshot on the calling thread, e.g. before the executor shuts down.
+     */
+    void flushSnapshotFile() {
+        synchronized (pendingSnapshotFile) { // So writes land in the order their snapshots were queued
+            SnapshotFile pending = pendingSnapshotFile.get();
+            while (pending != null) {
+                try {
+                    pending.write(snapshotFile);
+                } catch (IOException e) {
+                    logger.warn("Unable to write config snapshot: " + e.toString());
+                }
+                if (pendingSnapshotFile.compareAndSet(pending, null)) {
+                    return;
+                }
+                pending = pendingSnapshotFile.get(); // Replaced while writing, no other flush was queued for it
+            }
+        }
+    }
+
+    /**
+     * Stops watching the config folder and shuts down the reload thread, unless it belongs to a shared context. Values
+     * stay readable.
+     */
+    public void shutdown() {
+        setMetricsLogPeriod(0);
+        ConfigServer runningServer;
+        synchronized (this) {
+            runningServer = server;
+        }
+        if (runningServer != null) {
+            runningServer.close(); // Outside the lock, the server thread may be waiting for it to set values
+        }
+        changeStream.close();
+        if (watchTask != null) {
+            watchTask.cancel(false);
+        }
+        if (watchDir != null) {
+            try {
+                watchDir.close();
+            } catch (IOException e) {
+                logger.error("Unable to close config folder watcher: " + e.toString());
+            }
+        }
+        reloadScheduler.shutdown();
+        writtenFiles.values().forEach(OverrideFile::flush); // Queued writes are dropped with the executor
+        flushSnapshotFile();
+        setParseParallelism(1);
+    }
+
+    public Path getRootFolder() {
+        return rootFolder;
+    }
+
+    public String getRobotName() {
+        return robotName;
+    }
+
+    /**
+     * @return an entry of this manager's config
+     */
+    public YamlConfigEntry getEntry(String path) {
+        return new YamlConfigEntry(path, this);
+    }
+
+    /**
+     * @return a prefix of this manager's config, "" for the root
+     */
+    public YamlConfigPrefix getPrefix(String prefix) {
+        return new YamlConfigPrefix(prefix, this);
+    }
+
+    /**
+     * @param quietPeriodMillis how long to wait after the last file change before reloading
+     * @param maxLatencyMillis longest a file change waits for a reload while changes keep arriving
+     */
+    public void setReloadTiming(long quietPeriodMillis, long maxLatencyMillis) {
+        reloadScheduler.setTiming(quietPeriodMillis, maxLatencyMillis);
+    }
+
+    public ConfigMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param periodMillis how often to log a metrics summary at info level, 0 to stop
+     */
+    public synchronized void setMetricsLogPeriod(long periodMillis) {
+        if (metricsLogTask != null) {
+            metricsLogTask.cancel(false);
+            metricsLogTask = null;
         }
+        if (periodMillis > 0) {
+            metricsLogTask = reloadScheduler.getExecutor().scheduleAtFixedRate(() -> logger.info("Config metrics: " + metrics.dump()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param printConfig whether to log every config value after each reload
+     */
+    public void setPrintConfigOnReload(boolean printConfig) {
+        printConfigOnReload = printConfig;
+    }
+
+    ReloadScheduler getReloadScheduler() {
+        return reloadScheduler;
+    }
+
+    private static Path toCacheKey(Path path) {
+        return path.toAbsolutePath().normalize();
     }
 
     private synchronized void parseMetaFile() { // TODO: static
-        metaFileConfig = new HashMap<>();
-        logger.debug("Parsing configuration meta file " + CONFIG_META_FILE);
+        Map<String, List<String>> metaFileConfig = new HashMap<>();
+        this.metaFileConfig = metaFileConfig;
+        metaFileSource = null;
+        logger.debug("Parsing configuration meta file " + metaFile);
         Yaml yaml = new Yaml();
-        InputStream input = null;
         try {
-            File file = new File(CONFIG_META_FILE);
-            input = new FileInputStream(file);
-            String yamlString = new String(input.readAllBytes(), StandardCharsets.UTF_8);
-            input.close();
-            Map<String, Object> rawConfigFileMap = yaml.load(yamlString);
+            ConfigFileReader reader = fileReaders.get();
+            reader.read(metaFile);
+            String relativePath = rootFolder.relativize(metaFile).toString().replace(File.separatorChar, PATH_SEPARATOR);
+            metaFileSource = new SnapshotFile.Source(relativePath, reader.size(), reader.hash());
+            Map<String, Object> rawConfigFileMap = yaml.load(reader.decode());
+            reader.release();
             if (rawConfigFileMap == null) {
                 logger.error("Config meta file is null!");
                 return;
@@ -116,18 +427,11 @@ public class YamlConfigManager implements Runnable {
             }
 
         } catch (ScannerException | ParserException e) {
-            logger.error("Exception when parsing config meta file " + CONFIG_META_FILE + e.getContextMark());
-        } catch (FileNotFoundException e) {
-            logger.error("Config meta file not found at path: " + CONFIG_META_FILE);
+            logger.error("Exception when parsing config meta file " + metaFile + e.getContextMark());
+        } catch (NoSuchFileException e) {
+            logger.error("Config meta file not found at path: " + metaFile);
         } catch (IOException e) {
-            e.printStackTrace();
-        }
-        if (input != null) {
-            try {
-                input.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            logger.error("Unable to read config meta file " + metaFile + ": " + e.toString());
         }
     }
 
@@ -148,101 +452,581 @@ public class YamlConfigManager implements Runnable {
         return primaryPaths;
     }
 
-    private Map<String, Object> newReducedConfigMap = new HashMap<>();
+    /**
+     * Builds the next generation of the reduced config off to the side and publishes it with a single reference swap.
+     * Readers keep seeing the previous snapshot until the swap and never take a lock.
+     *
+     * Only files that changed, or that were newly added to the layer lists, are re-read. The next generation is derived
+     * from the previous merge by re-resolving only the paths those files define, in primary-then-override order with the
+     * in-memory overrides on top, so it shares every unchanged value with the previous generation.
+     *
+     * @param changedFiles absolute paths of files modified since the last reload
+     */
+    synchronized void reload(Set<Path> changedFiles) {
+        if (changedFiles.contains(toCacheKey(metaFile))) {
+            parseMetaFile();
+        }
+
+        long reloadStart = System.nanoTime();
+        List<Path> layerFiles = new ArrayList<>();
+        addLayerFiles("", layerFiles);
+        addLayerFiles(robotName, layerFiles);
+        layerFiles.add(tunedValuesFile);
+        fileCache.keySet().retainAll(layerFiles); // Forget files removed from the layer lists
+        fileTopLevelKeys.keySet().retainAll(layerFiles);
+
+        List<Path> filesToParse = new ArrayList<>();
+        for (Path path : layerFiles) {
+            // The tuned values file is always read, so setting values never has to read it
+            if (lazyLoading && !path.equals(tunedValuesFile) && !fileCache.containsKey(path)
+                && !isSubtreeLoaded(path, changedFiles.contains(path))) {
+                continue; // Not read yet, changes to it only need the top-level keys re-scanned
+            }
+            if ((!fileCache.containsKey(path) || changedFiles.contains(path)) && !filesToParse.contains(path)) {
+                filesToParse.add(path);
+            }
+        }
+        long parseStart = System.nanoTime();
+        ConfigFile[] parsedFiles = parseFiles(filesToParse);
+        long parseNanos = System.nanoTime() - parseStart;
+        for (int i = 0; i < parsedFiles.length; i++) {
+            if (parsedFiles[i] == null) {
+                fileCache.remove(filesToParse.get(i));
+            } else {
+                fileCache.put(filesToParse.get(i), parsedFiles[i]);
+            }
+            if (filesToParse.get(i).equals(tunedValuesFile)) {
+                tunedValuesFileUnreadable = parsedFiles[i] == null && Files.exists(tunedValuesFile);
+            }
+        }
 
-    private synchronized void updateAllFiles() {
-        updateFilesInKey("");
-        updateFilesInKey(RobotIdentifier.getRobotName());
-        executeUpdates();
+        // Merge in meta file order whatever order the files were parsed in, so later layers still override earlier ones
+        List<Map<String, Object>> layers = new ArrayList<>(layerFiles.size());
+        for (Path path : layerFiles) {
+            ConfigFile configFile = fileCache.get(path);
+            layers.add(configFile == null ? Collections.emptyMap() : configFile.getValues());
+        }
+        layers.add(memoryOverrides);
+        ConfigSnapshot oldSnapshot = snapshot.get();
+        ConfigSnapshot newSnapshot = mergedSnapshot.withChanges(oldSnapshot.getGeneration() + 1, mergeChanges(layerFiles, layers));
+        mergedSnapshot = newSnapshot;
+        mergedLayerFiles = layerFiles;
+        mergedLayers = layers;
+        publish(newSnapshot);
+        long mergeNanos = System.nanoTime() - reloadStart - parseNanos;
+        executeUpdates(oldSnapshot, newSnapshot);
+        if (!lazyLoading && memoryOverrides.isEmpty()) { // The snapshot file must only hold values found in files
+            writeSnapshotFile(layerFiles, newSnapshot);
+        }
+        metrics.recordReload(System.nanoTime() - reloadStart, mergeNanos);
         logger.debug("---------Config Update Ended---------");
-        printConfig();
+        if (printConfigOnReload) {
+            printConfig();
+        }
     }
 
-    private void executeUpdates() {
-        Set<Runnable> nextUpdateSet = new HashSet<>();
-        newReducedConfigMap.forEach((key, value) -> {
+    /**
+     * Finds the paths whose merged value may have changed since the last reload and resolves each from the last layer
+     * defining it. Only the values of files that changed are compared, unless the layer files themselves changed, so the
+     * work is proportional to the size of the changed files rather than to the size of the config.
+     *
+     * @param layers values of each layer file, in merge order
+     * @return maps paths to their merged value, null for paths no layer defines any more
+     */
+    private Map<String, Object> mergeChanges(List<Path> layerFiles, List<Map<String, Object>> layers) {
+        Set<String> candidates = new HashSet<>();
+        if (!layerFiles.equals(mergedLayerFiles) || layers.size() != mergedLayers.size()) {
+            mergedLayers.forEach(layer -> candidates.addAll(layer.keySet()));
+            layers.forEach(layer -> candidates.addAll(layer.keySet()));
+        } else {
+            for (int i = 0; i < layers.size(); i++) {
+                addChangedPaths(mergedLayers.get(i), layers.get(i), candidates);
+            }
+        }
+        return resolve(candidates, layers);
+    }
+
+    /**
+     * @return maps each path to the value of the last layer defining it, null if none does
+     */
+    private static Map<String, Object> resolve(Collection<String> paths, List<Map<String, Object>> layers) {
+        Map<String, Object> changes = new HashMap<>(paths.size() * 2);
+        for (String path : paths) {
+            Object value = null;
+            for (int i = layers.size() - 1; i >= 0 && value == null; i--) {
+                value = layers.get(i).get(path);
+            }
+            changes.put(path, value);
+        }
+        return changes;
+    }
+
+    private static void addChangedPaths(Map<String, Object> oldValues, Map<String, Object> newValues, Set<String> changedPaths) {
+        if (oldValues == newValues) {
+            return; // File not re-parsed
+        }
+        newValues.forEach((path, value) -> {
+            if (!Objects.deepEquals(value, oldValues.get(path))) {
+                changedPaths.add(path);
+            }
+        });
+        oldValues.keySet().forEach(path -> {
+            if (!newValues.containsKey(path)) {
+                changedPaths.add(path);
+            }
+        });
+    }
 
+    /**
+     * Sets values in the in-memory override layer, which sits above the robot overrides, and publishes them as one
+     * generation without reading or writing any config file. Listeners run and change subscribers are signalled as for
+     * a reload. Takes microseconds, unless a reload is running, which it waits for, but inline listeners run on the
+     * calling thread with the manager locked before this returns. Callers that must not stall, like a control loop,
+     * should register listeners with an executor; the {@link ConfigServer} calls this from the reload thread.
+     *
+     * The overrides last until they are removed or the manager shuts down. If the manager was built with
+     * {@link Builder#persistOverrides(String)}, they are written to that file in the background and restored on start.
+     *
+     * @param values maps paths to their new values: numbers, booleans, strings, double[] lists or double[][] tables.
+     * A null value removes the override of the path, exposing the value from the files again.
+     * @return the generation holding the new values
+     * @throws IllegalArgumentException if a value has another type
+     */
+    public synchronized long setOverrides(Map<String, ?> values) {
+        Map<String, Object> newOverrides = new LinkedHashMap<>(memoryOverrides);
+        List<String> paths = new ArrayList<>(values.size());
+        values.forEach((key, value) -> {
+            if (value != null && !YamlFlattener.isSupportedType(value)) {
+                throw new IllegalArgumentException("Config value at " + key + " is of unsupported type " + value.getClass().getName());
+            }
+            String path = PathNormalizer.canonicalId(key);
+            paths.add(path);
+            if (value == null) {
+                newOverrides.remove(path);
+            } else {
+                newOverrides.put(path, value);
+            }
         });
-        nextUpdateSet.forEach(Runnable::run);
+        memoryOverrides = Collections.unmodifiableMap(newOverrides);
+        if (memoryOverridesFile != null) {
+            memoryOverridesFile.writeAsync(memoryOverrides);
+        }
+        if (mergedLayers.isEmpty()) {
+            reload(Collections.emptySet()); // Started from the snapshot file and nothing is merged yet
+            return snapshot.get().getGeneration();
+        }
+
+        List<Map<String, Object>> layers = new ArrayList<>(mergedLayers);
+        layers.set(layers.size() - 1, memoryOverrides);
+        return publishWrite(layers, resolve(paths, layers));
     }
 
-    private void updateFilesInKey(String key) {
-        List<String> overridePaths = metaFileConfig.get(key);
-        updateFilesInList(overridePaths);
+    /**
+     * Publishes values set from code as the next generation. They are merged into the values from the files too, but
+     * after a rollback they are applied to the rolled back values, so only the paths they set change until the next
+     * reload.
+     *
+     * @param layers every layer with the written values, replacing the merged layers
+     * @param changes maps the written paths to their new merged value
+     * @return the new generation
+     */
+    private long publishWrite(List<Map<String, Object>> layers, Map<String, Object> changes) {
+        ConfigSnapshot oldSnapshot = snapshot.get();
+        long generation = oldSnapshot.getGeneration() + 1;
+        ConfigSnapshot merged = mergedSnapshot.withChanges(generation, changes);
+        ConfigSnapshot newSnapshot = oldSnapshot == mergedSnapshot ? merged : oldSnapshot.withChanges(generation, changes);
+        mergedSnapshot = merged;
+        mergedLayers = layers;
+        publish(newSnapshot);
+        executeUpdates(oldSnapshot, newSnapshot);
+        return generation;
     }
 
-    private void updateFilesInList(List<String> overridePaths) {
+    /**
+     * @return the in-memory overrides by normalized path
+     * @see #setOverrides(Map)
+     */
+    public Map<String, Object> getOverrides() {
+        return memoryOverrides;
+    }
+
+    /**
+     * Sets values in the robot's tuned values file and publishes them as one generation right away. The tuned values
+     * file is generated: it is layered above the robot's override files without being listed in the meta file, and only
+     * this method writes it, so the hand-maintained config files are never rewritten. It is written in the background,
+     * coalescing values set while a write is pending, with one flat "path: value" line per value.
+     *
+     * The tuned values file is read with the rest of the config, so this never reads a file, but it takes the manager
+     * lock and so waits for a running reload, and inline listeners of the changed paths run on the calling thread before
+     * it returns. Each call copies the tuned values, so its cost grows with the number of values set so far.
+     *
+     * Values shadowed by the in-memory overrides are written but do not show until the override is removed.
+     *
+     * @param values maps paths to their new values, see {@link #setOverrides(Map)}. A null value removes the path from
+     * the tuned values file, exposing the value from the other files again.
+     * @return the generation holding the new values
+     * @throws IllegalStateException if the tuned values file exists but cannot be parsed, so writing it would lose the
+     * values in it
+     * @see Builder#tunedValuesFileName(String)
+     */
+    synchronized long setValues(Map<String, ?> values) {
+        if (mergedLayers.isEmpty()) {
+            reload(Collections.emptySet()); // Started from the snapshot file and nothing is merged yet
+        }
+        ConfigFile tunedFile = fileCache.get(tunedValuesFile);
+        if (tunedFile == null) {
+            if (tunedValuesFileUnreadable) {
+                throw new IllegalStateException("Unable to read tuned values file " + tunedValuesFile);
+            }
+            tunedFile = new ConfigFile(tunedValuesFile, 0, -1, new byte[0], Collections.emptyMap()); // Not created yet
+        }
+        if (tunedFile.hasParseError()) {
+            throw new IllegalStateException("Tuned values file " + tunedValuesFile + " cannot be parsed, fix or delete it before setting values");
+        }
+
+        Map<String, Object> newValues = new LinkedHashMap<>(tunedFile.getValues());
+        List<String> paths = new ArrayList<>(values.size());
+        values.forEach((key, value) -> {
+            if (value != null && !YamlFlattener.isSupportedType(value)) {
+                throw new IllegalArgumentException("Config value at " + key + " is of unsupported type " + value.getClass().getName());
+            }
+            String path = PathNormalizer.canonicalId(key);
+            paths.add(path);
+            if (value == null) {
+                newValues.remove(path);
+            } else {
+                newValues.put(path, value);
+            }
+        });
+        tunedFile = tunedFile.withValues(newValues);
+        fileCache.put(tunedValuesFile, tunedFile);
+
+        List<Map<String, Object>> layers = new ArrayList<>(mergedLayers);
+        int index = mergedLayerFiles.indexOf(tunedValuesFile); // Always a layer, see reload
+        layers.set(index, tunedFile.getValues());
+        long generation = publishWrite(layers, resolve(paths, layers)); // Only the set paths, without diffing the file
+
+        writtenFiles.computeIfAbsent(tunedValuesFile, path -> new OverrideFile(path, reloadScheduler.getExecutor()))
+            .writeAsync(tunedFile.getValues());
+        return generation;
+    }
+
+    /**
+     * Starts a server on the loopback interface for reading, setting and subscribing to values over a socket, e.g. from
+     * a tuning dashboard. Values set through it go into the in-memory override layer. The server stops when the manager
+     * shuts down.
+     *
+     * @param port port to listen on, 0 for any free port
+     * @throws IllegalStateException if a server is already running
+     * @see ConfigServer
+     */
+    public synchronized ConfigServer startServer(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Config server is already running on port " + server.getPort());
+        }
+        server = new ConfigServer(this, port);
+        return server;
+    }
+
+    private void publish(ConfigSnapshot newSnapshot) {
+        history.record(newSnapshot); // Recorded first, so a reader can always look up the generation it sees
+        snapshot.set(newSnapshot);
+    }
+
+    /**
+     * Republishes the values of an earlier generation as a new generation, without reading or writing any file. Only
+     * listeners of paths whose values differ from the current generation run. Values set afterwards with
+     * {@link #setOverrides(Map)} or {@link YamlConfigEntry#set(double)} only change the paths they set. The next reload
+     * rebuilds the config from the files again, so a rollback lasts until a config file changes.
+     *
+     * In lazy mode, subtrees first loaded after the earlier generation read as missing until the next reload.
+     *
+     * @param generation generation to roll back to, still in the history
+     * @return the new generation holding the earlier values
+     * @throws IllegalArgumentException if the generation is not in the history
+     */
+    public synchronized long rollback(long generation) {
+        ConfigSnapshot target = getSnapshot(generation);
+        ConfigSnapshot oldSnapshot = snapshot.get();
+        ConfigSnapshot newSnapshot = target.withGeneration(oldSnapshot.getGeneration() + 1);
+        publish(newSnapshot);
+        logger.info("Rolled config back to generation " + generation + " as generation " + newSnapshot.getGeneration());
+        executeUpdates(oldSnapshot, newSnapshot);
+        return newSnapshot.getGeneration();
+    }
+
+    /**
+     * @return the current generation, incremented each time a new config is published
+     */
+    public long getGeneration() {
+        return snapshot.get().getGeneration();
+    }
+
+    /**
+     * @return the oldest generation still readable with {@link YamlConfigEntry#getAsDoubleAsOf} and the like, or
+     * available to {@link #rollback(long)}
+     */
+    public long getOldestGeneration() {
+        long current = getGeneration();
+        long oldest = Math.max(1, current - history.capacity() + 1);
+        while (oldest < current && history.get(oldest) == null) {
+            oldest++; // Evicted while scanning, or never published
+        }
+        return oldest;
+    }
+
+    /**
+     * Diffs two generations and dispatches every entry listener whose path changed and every prefix listener whose
+     * subtree changed. Each listener is dispatched at most once per reload, and a reload that changes nothing dispatches
+     * none. Inline listeners run before this returns, listeners with an executor and change subscribers are only queued.
+     */
+    void executeUpdates(ConfigSnapshot oldSnapshot, ConfigSnapshot newSnapshot) {
+        long publishedNanos = System.nanoTime();
+        Set<String> changedPaths = newSnapshot.changedPathsSince(oldSnapshot);
+        metrics.recordKeysChanged(changedPaths.size());
+        if (changedPaths.isEmpty()) {
+            logger.debug("No config values changed");
+            return;
+        }
+        logger.debug(changedPaths.size() + " config values changed");
+
+        if (changeStream.hasSubscribers()) {
+            changeStream.publish(oldSnapshot, newSnapshot, changedPaths);
+        }
+
+        Set<ConfigListener> nextUpdateSet = new LinkedHashSet<>();
+        changedPaths.forEach(path -> listeners.collectListeners(path, nextUpdateSet));
+        long generation = newSnapshot.getGeneration();
+        nextUpdateSet.forEach(listener -> listener.dispatch(generation, publishedNanos));
+    }
+
+    /**
+     * Drops every cached file and re-parses the meta file and the whole config.
+     */
+    synchronized void reparseAll() {
+        fileCache.clear();
+        parseMetaFile();
+        reload(Collections.emptySet());
+    }
+
+    private void addLayerFiles(String key, List<Path> layerFiles) {
+        List<String> overridePaths = metaFileConfig.get(key);
         if (overridePaths != null) {
             for (String path : overridePaths) {
-                String fullPath = CONFIG_ROOT_FOLDER + PATH_SEPARATOR + path;
-                logger.debug("Parsing file " + fullPath);
-                updateConfigFile(Paths.get(fullPath));
+                layerFiles.add(toCacheKey(rootFolder.resolve(path)));
             }
         }
     }
 
+    static String valueToString(Object value) {
+        if (value instanceof double[]) {
+            return Arrays.toString((double[]) value);
+        } else if (value instanceof double[][]) {
+            return Arrays.deepToString((double[][]) value);
+        }
+        return String.valueOf(value);
+    }
+
     public void printConfig() {
-        reducedConfigMap.forEach((key, value) -> {
-            logger.debug(key + ": " + value);
+        snapshot.get().getValues().forEach((key, value) -> {
+            logger.info(key + ": " + valueToString(value));
         });
     }
 
-    private void updateConfigFile(Path path) {
-        if (!FilenameUtils.isExtension(path.toString(), "yaml")) {
-            logger.warn("Provided file " + path.toString() + " is not of type yaml");
-            return;
+    /**
+     * @param changed whether the file changed since its top-level keys were scanned
+     * @return whether a top-level key of a file that has not been parsed yet has been read, or might have been
+     */
+    private boolean isSubtreeLoaded(Path path, boolean changed) {
+        if (changed || !fileTopLevelKeys.containsKey(path)) {
+            fileTopLevelKeys.put(path, scanTopLevelKeys(path));
         }
-        Yaml yaml = new Yaml();
-        InputStream input = null;
-        try {
-            input = new FileInputStream(new File(path.toUri()));
-            @SuppressWarnings("unchecked")
-            Map<String, Object> map = yaml.load(input);
-            input.close();
-            traverseConfigMap("", map);
-        } catch (Exception e) { // TODO: Don't do this
-            logger.error("Unable to parse YAML file: " + e.toString());
-        }
-        if (input != null) {
-            try {
-                input.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        Set<String> topLevelKeys = fileTopLevelKeys.get(path);
+        if (topLevelKeys == null || allSubtreesLoaded) {
+            return true;
+        }
+        for (String key : topLevelKeys) {
+            if (loadedSubtrees.contains(key)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * @return the file's top-level keys, or null if they cannot be determined without parsing it
+     */
+    private Set<String> scanTopLevelKeys(Path path) {
+        ConfigFileReader reader = fileReaders.get();
+        try {
+            reader.read(path);
+            return TopLevelKeyScanner.scan(reader.decodeChars());
+        } catch (IOException e) {
+            return null; // Let parsing report the error
+        } finally {
+            reader.release();
+        }
     }
 
-    private void traverseConfigMap(String globalPath, Map<String, Object> rawYamlMap) {
-        for (Entry<String, Object> entry : rawYamlMap.entrySet()) {
-            String localPath = entry.getKey();
-            Object configValue = entry.getValue();
-            processConfigValue(globalPath + PATH_SEPARATOR + localPath, configValue);
+    /**
+     * In lazy mode, parses the files contributing to the subtree containing the path if it has not been read before.
+     * Blocks until they are parsed and published.
+     *
+     * @param normalizedPath normalized path being read, "" to load every file
+     * @return true if a new generation was published
+     */
+    boolean loadSubtree(String normalizedPath) {
+        if (!lazyLoading || allSubtreesLoaded) {
+            return false;
+        }
+        int separator = normalizedPath.indexOf(PATH_SEPARATOR);
+        String topLevelKey = separator < 0 ? normalizedPath : normalizedPath.substring(0, separator);
+        if (!topLevelKey.isEmpty() && loadedSubtrees.contains(topLevelKey)) {
+            return false;
+        }
+        synchronized (this) {
+            if (topLevelKey.isEmpty()) {
+                allSubtreesLoaded = true;
+            } else if (!loadedSubtrees.add(topLevelKey)) {
+                return false; // Loaded by another thread while waiting for the lock
+            }
+            logger.debug("Lazily loading config under " + (topLevelKey.isEmpty() ? "the root" : topLevelKey));
+            reload(Collections.emptySet());
         }
+        return true;
     }
 
     /**
-     * @param path Full path to the location in the config tree
-     * @param value Object that is either a map of more config values or a config value itself
-     * @return If the value changed or a value in the path changed
+     * Reads and flattens files, in parallel on the parse pool if there is one. Only reads the file cache, so it is safe
+     * to call while holding the manager lock.
+     *
+     * @return each file's contribution, in the order of the given paths, null for files that cannot be read
      */
-    private void processConfigValue(String path, Object value) {
-        if (value instanceof Map) { // if value is a map of more config values
-            traverseConfigMap(path, (Map<String, Object>) value);
-        } else if (isSupportedType(value)) { // if value is a config entry
-            newReducedConfigMap.put(path, value);
+    private ConfigFile[] parseFiles(List<Path> paths) {
+        ConfigFile[] parsedFiles = new ConfigFile[paths.size()];
+        ForkJoinPool pool = parsePool;
+        if (pool == null || paths.size() < 2) {
+            for (int i = 0; i < parsedFiles.length; i++) {
+                parsedFiles[i] = parseTimed(paths.get(i));
+            }
         } else {
-            logger.warn("YAML contains object of unknown type: " + (value == null ? "null" : value.toString()));
+            pool.submit(() -> IntStream.range(0, parsedFiles.length).parallel()
+                .forEach(i -> parsedFiles[i] = parseTimed(paths.get(i)))).join();
         }
+        return parsedFiles;
+    }
+
+    private ConfigFile parseTimed(Path path) {
+        long start = System.nanoTime();
+        ConfigFile configFile = updateConfigFile(path, fileCache.get(path));
+        metrics.recordParse(path.toString(), System.nanoTime() - start);
+        return configFile;
     }
 
-    private static boolean isSupportedType(Object value) {
-        return value instanceof Number;
+    /**
+     * @param parallelism number of threads to parse changed files on, 1 to parse them serially on the reload thread
+     */
+    public synchronized void setParseParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parse parallelism must be at least 1");
+        }
+        if (parsePool != null) {
+            parsePool.shutdown();
+            parsePool = null;
+        }
+        if (parallelism > 1) {
+            parsePool = new ForkJoinPool(parallelism, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("yaml-config-parse-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+    }
+
+    /**
+     * Files whose modification time and size match the cached ones are not read at all. Otherwise the file is read and
+     * hashed, and only parsed if its content hash changed.
+     *
+     * @param path absolute path of the file to read
+     * @param cached the file's previous contribution, or null if it has not been read before
+     * @return the file's contribution, the cached one if its stat or content hash is unchanged, or null if it cannot be
+     * read
+     */
+    private ConfigFile updateConfigFile(Path path, ConfigFile cached) {
+        if (!FilenameUtils.isExtension(path.toString(), "yaml")) {
+            logger.warn("Provided file " + path.toString() + " is not of type yaml");
+            return null;
+        }
+        long statMillis = System.currentTimeMillis();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            logger.debug("File no longer exists " + path);
+            return null;
+        } catch (IOException e) {
+            logger.error("Unable to read YAML file: " + e.toString());
+            return null;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (cached != null && cached.getLastModified() == lastModified && cached.getSize() == attributes.size()) {
+            logger.debug("File unchanged since last read, skipping " + path);
+            return cached;
+        }
+        if (statMillis - lastModified <= MODIFIED_TIME_RESOLUTION_MILLIS) {
+            lastModified = UNKNOWN_MODIFIED_TIME; // Could change again without its timestamp changing, so never trust it
+        }
+
+        ConfigFileReader reader = fileReaders.get();
+        try {
+            reader.read(path);
+            long size = reader.size();
+            byte[] hash = reader.hash();
+            if (cached != null && cached.getSize() == size && cached.hasHash(hash)) {
+                logger.debug("File content unchanged, skipping parse " + path);
+                return cached.withStat(lastModified, size);
+            }
+
+            logger.debug("Parsing file " + path);
+            Map<String, Object> values = new LinkedHashMap<>();
+            try {
+                flatteners.get().flatten(reader.decodeChars(), values);
+            } catch (Exception e) { // TODO: Don't do this
+                logger.error("Unable to parse YAML file: " + e.toString());
+                return new ConfigFile(path, lastModified, size, hash, Collections.emptyMap(), true);
+            }
+            return new ConfigFile(path, lastModified, size, hash, values);
+        } catch (IOException e) {
+            logger.error("Unable to read YAML file: " + e.toString());
+            return null;
+        } finally {
+            reader.release();
+        }
     }
 
     // public begin
 
-    synchronized Double getDouble(String key) {
-        Object val = reducedConfigMap.get(normalizePathStandard(key));
+    ConfigSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the generation is not in the history
+     */
+    ConfigSnapshot getSnapshot(long generation) {
+        ConfigSnapshot generationSnapshot = history.get(generation);
+        if (generationSnapshot == null) {
+            throw new IllegalArgumentException("Config generation " + generation + " is not in the history, the oldest is "
+                + getOldestGeneration());
+        }
+        return generationSnapshot;
+    }
+
+    Double getDouble(String key) {
+        String path = PathNormalizer.canonicalId(key);
+        loadSubtree(path);
+        Object val = snapshot.get().get(path);
         if (val == null) {
             return null;
         }
@@ -253,15 +1037,69 @@ public class YamlConfigManager implements Runnable {
     }
 
 
-    synchronized void registerPathListener(String key, Runnable onChange) {
-        String normalizedKey = normalizePathStandard(key);
-        if (listenerMap.containsKey(normalizedKey)) {
-            listenerMap.get(normalizedKey).add(onChange);
-        } else {
-            ArrayList<Runnable> newListenerList = new ArrayList<>();
-            newListenerList.add(onChange);
-            listenerMap.put(normalizedKey, newListenerList);
-        }
+    void registerPathListener(String key, Runnable onChange) {
+        registerPathListener(key, null, onChange);
+    }
+
+    /**
+     * @param executor executor to run the listener on, null to run it inline on the reload thread
+     */
+    void registerPathListener(String key, Executor executor, Runnable onChange) {
+        String path = PathNormalizer.canonicalId(key);
+        loadSubtree(path);
+        ConfigListener listener = new ConfigListener(path, false, onChange, executor, metrics);
+        registeredListeners.add(listener);
+        listeners.addEntryListener(path, listener);
+    }
+
+    void registerPrefixListener(String prefix, Runnable onChange) {
+        registerPrefixListener(prefix, null, onChange);
+    }
+
+    /**
+     * @param executor executor to run the listener on, null to run it inline on the reload thread
+     */
+    void registerPrefixListener(String prefix, Executor executor, Runnable onChange) {
+        String path = PathNormalizer.canonicalId(prefix);
+        loadSubtree(path);
+        ConfigListener listener = new ConfigListener(path, true, onChange, executor, metrics);
+        registeredListeners.add(listener);
+        listeners.addPrefixListener(path, listener);
+    }
+
+    /**
+     * Change batches signalled on the common fork-join pool.
+     *
+     * @see #getChangePublisher(String, Executor)
+     */
+    public Flow.Publisher<ConfigChangeBatch> getChangePublisher(String prefix) {
+        return getChangePublisher(prefix, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Publishes a batch of (path, old value, new value) changes for each generation that changes a value under the
+     * prefix, including rollbacks. Reloads never wait for subscribers: batches a subscriber has not requested yet are
+     * queued, and past 16 queued batches further ones are merged into the last one, which is dropped if every value in
+     * it changed back. Subscribers are completed when the manager shuts down.
+     *
+     * @param prefix prefix to filter changes by, "" for every change
+     * @param executor executor to signal subscribers on
+     */
+    public Flow.Publisher<ConfigChangeBatch> getChangePublisher(String prefix, Executor executor) {
+        String prefixId = PathNormalizer.canonicalId(prefix);
+        return subscriber -> {
+            loadSubtree(prefixId);
+            changeStream.subscribe(prefixId, executor, subscriber);
+        };
+    }
+
+    /**
+     * @return execution times of every registered listener, in registration order
+     */
+    public List<ListenerStats> getListenerStats() {
+        List<ListenerStats> stats = new ArrayList<>(registeredListeners.size());
+        registeredListeners.forEach(listener -> stats.add(listener.getStats()));
+        return stats;
     }
 
     /**
@@ -270,29 +1108,141 @@ public class YamlConfigManager implements Runnable {
      * @return normalized key
      */
     public static String normalizePath(String path, boolean withLeadingSlash, boolean removeTrailingSlash) {
-        if (path.equals("")) {
-            return "";
+        return PathNormalizer.normalize(path, withLeadingSlash, removeTrailingSlash);
+    }
+
+    public static String normalizePathStandard(String path) {
+        return PathNormalizer.normalize(path, false, true);
+    }
+    /**
+     * Configures a manager. Managers sharing a {@link YamlConfigContext} share its reload threads and watch service.
+     */
+    public static final class Builder {
+
+        private Path rootFolder = Paths.get(CONFIG_ROOT_FOLDER);
+        private String metaFileName = CONFIG_META_FILE_NAME;
+        private String snapshotFileName = CONFIG_SNAPSHOT_FILE_NAME;
+        private String robotName = RobotIdentifier.getRobotName();
+        private YamlConfigContext context;
+        private boolean watch = true;
+        private boolean lazyLoading;
+        private int parseParallelism = 1; // Serial unless opted in, a pool per manager costs threads on small robots
+        private int historySize = DEFAULT_HISTORY_SIZE;
+        private String overridesFileName; // null to keep in-memory overrides in memory only
+        private String tunedValuesFileName; // null for the robot name followed by "-tuned.yaml"
+
+        private Builder() {
         }
 
-        String normalized;
-        if (withLeadingSlash) {
-            normalized = PATH_SEPARATOR + path;
-        } else {
-            normalized = path;
+        /**
+         * @param rootFolder folder containing the meta file, which lists config file paths relative to this folder
+         */
+        public Builder rootFolder(Path rootFolder) {
+            this.rootFolder = rootFolder;
+            return this;
         }
-        normalized = normalized.replaceAll(PATH_SEPARATOR + "{2,}", String.valueOf(PATH_SEPARATOR));
 
-        if (!withLeadingSlash && normalized.charAt(0) == PATH_SEPARATOR) {
-            normalized = normalized.substring(1);
+        /**
+         * @param metaFileName meta file path relative to the root folder
+         */
+        public Builder metaFileName(String metaFileName) {
+            this.metaFileName = metaFileName;
+            return this;
         }
 
-        if (removeTrailingSlash && normalized.charAt(normalized.length() - 1) == PATH_SEPARATOR) {
-            normalized = normalized.substring(0, normalized.length() - 1);
+        /**
+         * @param snapshotFileName binary snapshot path relative to the root folder, distinct per robot if several
+         * robots share a root folder
+         */
+        public Builder snapshotFileName(String snapshotFileName) {
+            this.snapshotFileName = snapshotFileName;
+            return this;
         }
-        return normalized;
-    }
 
-    public static String normalizePathStandard(String path) {
-        return normalizePath(path, false, true);
+        /**
+         * @param robotName robot whose override files are layered over the primary files
+         */
+        public Builder robotName(String robotName) {
+            this.robotName = robotName;
+            return this;
+        }
+
+        /**
+         * @param context shared reload threads and watch service, null for the manager to start its own reload thread
+         */
+        public Builder context(YamlConfigContext context) {
+            this.context = context;
+            return this;
+        }
+
+        /**
+         * @param watch whether to start from the binary snapshot, if it is up to date, and watch the config folder for
+         * changes; false to parse every file synchronously and only write a fresh snapshot
+         */
+        public Builder watch(boolean watch) {
+            this.watch = watch;
+            return this;
+        }
+
+        /**
+         * @param lazyLoading whether to parse each file only once a path under one of its top-level keys is first read.
+         * The binary snapshot is neither loaded nor written in this mode, since it holds every value.
+         */
+        public Builder lazyLoading(boolean lazyLoading) {
+            this.lazyLoading = lazyLoading;
+            return this;
+        }
+
+        /**
+         * @param parseParallelism number of threads to parse changed files on, 1 to parse them serially on the reload
+         * thread. Defaults to 1, since each manager with more gets its own pool of parse threads.
+         */
+        public Builder parseParallelism(int parseParallelism) {
+            if (parseParallelism < 1) {
+                throw new IllegalArgumentException("Parse parallelism must be at least 1");
+            }
+            this.parseParallelism = parseParallelism;
+            return this;
+        }
+
+        /**
+         * @param historySize number of generations to keep for point-in-time reads and rollback, including the current
+         * one. Generations share unchanged values, so each one kept only costs the values that changed in it.
+         */
+        public Builder historySize(int historySize) {
+            if (historySize < 1) {
+                throw new IllegalArgumentException("History size must be at least 1");
+            }
+            this.historySize = historySize;
+            return this;
+        }
+
+        /**
+         * @param overridesFileName file, relative to the root folder, to persist values set with
+         * {@link YamlConfigManager#setOverrides(Map)} to in the background and to restore them from on start. Should
+         * not be listed in the meta file.
+         */
+        public Builder persistOverrides(String overridesFileName) {
+            this.overridesFileName = overridesFileName;
+            return this;
+        }
+
+        /**
+         * @param tunedValuesFileName file, relative to the root folder, that values set from code with
+         * {@link YamlConfigEntry#set(double)} and {@link YamlConfigPrefix#set(Map)} are written to. It is layered above
+         * the robot's override files and must not be listed in the meta file. Defaults to the robot name followed by
+         * "-tuned.yaml".
+         */
+        public Builder tunedValuesFileName(String tunedValuesFileName) {
+            this.tunedValuesFileName = tunedValuesFileName;
+            return this;
+        }
+
+        /**
+         * Loads the config and, if watching, starts watching the root folder.
+         */
+        public YamlConfigManager build() {
+            return new YamlConfigManager(this);
+        }
     }
 }
@@ -2,15 +2,25 @@ package org.liamwang.yamlconfig;
 
 import static org.liamwang.yamlconfig.YamlConfigManager.PATH_SEPARATOR;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 public final class YamlConfigPrefix {
 
+    private static final int MAX_CACHED_KEYS = 1024;
+
     private final String prefix;
+    private final String prefixId; // Canonical path id of the prefix
+    private final Map<String, String> keyIds = new ConcurrentHashMap<>(); // Maps raw keys to canonical ids of their paths
     private YamlConfigManager instance;
+    private volatile boolean subtreeLoaded; // Whether a pin already loaded the lazily loaded subtree of the prefix
 
     YamlConfigPrefix(String prefix, YamlConfigManager instance) {
         this.prefix = prefix;
+        this.prefixId = PathNormalizer.canonicalId(prefix);
         this.instance = instance;
     }
 
@@ -19,7 +29,70 @@ public final class YamlConfigPrefix {
     }
 
     public YamlConfigEntry getEntry(String key) {
-        return new YamlConfigEntry(prefix + PATH_SEPARATOR + key);
+        return new YamlConfigEntry(prefix + PATH_SEPARATOR + key, instance);
+    }
+
+    /**
+     * Pins the current config generation. Every read through the returned view sees that generation, so values read
+     * together, e.g. PID gains in one callback or one control loop tick, always come from the same reload.
+     */
+    public View pin() {
+        if (!subtreeLoaded) {
+            instance.loadSubtree(prefixId);
+            subtreeLoaded = true;
+        }
+        return new View(this, instance.getSnapshot());
+    }
+
+    /**
+     * Pins an earlier config generation, to read the values under this prefix as they were before a reload.
+     *
+     * @throws IllegalArgumentException if the generation is no longer in the history
+     * @see YamlConfigManager#getOldestGeneration()
+     */
+    public View pinAsOf(long generation) {
+        return new View(this, instance.getSnapshot(generation));
+    }
+
+    /**
+     * @return canonical path id of a key under this prefix, cached so repeated reads of a key do not build its path
+     */
+    private String idOf(String key) {
+        String id = keyIds.get(key);
+        if (id == null) {
+            id = PathNormalizer.canonicalId(prefixId.isEmpty() ? key : prefixId + PATH_SEPARATOR + key);
+            if (keyIds.size() < MAX_CACHED_KEYS) {
+                keyIds.put(key, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Reads several numbers from one config generation.
+     *
+     * @see View#readInto(double[], String...)
+     */
+    public int readInto(double[] dst, String... keys) {
+        return pin().readInto(dst, keys);
+    }
+
+    /**
+     * Sets several values in the robot's tuned values file as one config generation, e.g. every gain found by one
+     * autotuning step, so listeners and pinned reads never see some of them without the others. The file is written in
+     * the background.
+     *
+     * @param values maps keys relative to the prefix to numbers, booleans, strings, double[] lists or rectangular
+     * double[][] tables, or to null to remove the key from the tuned values file
+     * @return the config generation holding the new values
+     * @throws IllegalArgumentException if a value has another type
+     * @throws IllegalStateException if the tuned values file cannot be parsed
+     * @see YamlConfigEntry#set(double)
+     */
+    public long set(Map<String, ?> values) {
+        Map<String, Object> paths = new LinkedHashMap<>(values.size() * 2);
+        values.forEach((key, value) -> paths.put(idOf(key), value));
+        return instance.setValues(paths);
     }
 
     public void registerPrefixListener(Consumer<YamlConfigPrefix> onChange) {
@@ -30,6 +103,95 @@ public final class YamlConfigPrefix {
         if (runOnce) {
             onChange.accept(this);
         }
-        instance.registerPathListener(prefix, () -> onChange.accept(this));
+        instance.registerPrefixListener(prefix, () -> onChange.accept(this));
+    }
+
+    /**
+     * Registers a listener that runs on the given executor instead of the reload thread. If the listener falls behind,
+     * it runs once for the latest generation rather than once per reload; {@link #pin()} inside it sees that generation
+     * or a newer one.
+     *
+     * @param executor executor to run the listener on, e.g. {@link YamlConfig#newVirtualThreadExecutor()}
+     */
+    public void registerPrefixListener(Executor executor, Consumer<YamlConfigPrefix> onChange) {
+        registerPrefixListener(true, executor, onChange);
+    }
+
+    /**
+     * @param runOnce whether to run the listener once on the calling thread before registering it
+     */
+    public void registerPrefixListener(boolean runOnce, Executor executor, Consumer<YamlConfigPrefix> onChange) {
+        if (runOnce) {
+            onChange.accept(this);
+        }
+        instance.registerPrefixListener(prefix, executor, () -> onChange.accept(this));
+    }
+
+    /**
+     * Read-only view of the entries under a prefix, pinned to one config generation.
+     */
+    public static final class View {
+
+        private final YamlConfigPrefix prefix;
+        private final ConfigSnapshot snapshot;
+
+        private View(YamlConfigPrefix prefix, ConfigSnapshot snapshot) {
+            this.prefix = prefix;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * @return the config generation this view is pinned to, increasing with each reload
+         */
+        public long getGeneration() {
+            return snapshot.getGeneration();
+        }
+
+        private ConfigValue valueOf(String key) {
+            return snapshot.getValue(prefix.idOf(key));
+        }
+
+        public double getDouble(String key, double defaultValue) {
+            return valueOf(key).getDouble(defaultValue);
+        }
+
+        public int getInt(String key, int defaultValue) {
+            return valueOf(key).getInt(defaultValue);
+        }
+
+        public long getLong(String key, long defaultValue) {
+            return valueOf(key).getLong(defaultValue);
+        }
+
+        public boolean getBoolean(String key, boolean defaultValue) {
+            return valueOf(key).getBoolean(defaultValue);
+        }
+
+        public String getString(String key, String defaultValue) {
+            return valueOf(key).getString(defaultValue);
+        }
+
+        /**
+         * Resolves every key against this view's generation in one pass and writes the numbers into dst, in key order.
+         * Elements for keys that are missing or not numbers are left unchanged, so dst can be pre-filled with defaults.
+         *
+         * @param dst array of at least keys.length elements
+         * @param keys keys relative to the prefix
+         * @return number of keys that were found
+         */
+        public int readInto(double[] dst, String... keys) {
+            if (dst.length < keys.length) {
+                throw new IllegalArgumentException("Destination array is shorter than the list of keys");
+            }
+            int found = 0;
+            for (int i = 0; i < keys.length; i++) {
+                ConfigValue value = valueOf(keys[i]);
+                if (value.isNumber()) {
+                    dst[i] = value.getDouble(0);
+                    found++;
+                }
+            }
+            return found;
+        }
     }
 }
@@ -0,0 +1,426 @@
+package org.liamwang.yamlconfig;
+
+import static org.liamwang.yamlconfig.YamlConfigManager.PATH_SEPARATOR;
+
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Flattens a YAML config file into (path, value) pairs straight from SnakeYAML's event stream, without building the
+ * intermediate tree of maps. Paths are built in one reused buffer, so nesting depth only costs a truncation per level.
+ *
+ * Documents using merge keys, aliases of mappings or lists, or scalars that SnakeYAML would construct as anything other
+ * than a number, boolean or string are loaded with {@link Yaml#load} instead, so every file flattens the same way.
+ *
+ * Not thread safe; use one flattener per thread.
+ */
+final class YamlFlattener {
+
+    private static final Logger logger = Logger.getLogger(YamlFlattener.class);
+
+    private static final FallbackException FALLBACK = new FallbackException();
+
+    private final Yaml yaml = new Yaml(new SafeConstructor());
+    private final Resolver resolver = new Resolver();
+    private final StringBuilder pathBuilder = new StringBuilder();
+    private final Map<String, Object> anchors = new HashMap<>(); // Maps scalar anchors to their values
+
+    private int[] pathLengths = new int[16]; // Path length at the start of each open mapping
+    private int depth;
+
+    private int skipDepth; // Nesting depth of an unsupported collection being skipped
+
+    private String listKey; // Key of the list being collected, null when not inside a list
+    private double[] listBuffer = new double[16]; // Reused across lists, copied out when a list ends
+    private int listSize;
+    private boolean listValid;
+    private boolean inRow; // Whether the list is a table and a row is open
+    private boolean isTable; // Whether the list's elements are rows rather than numbers
+    private int rowStart; // Index in the list buffer where the open row starts
+    private int rowCount;
+    private int columnCount; // Length of the first row, every row must match it
+
+    /**
+     * @param chars YAML source
+     * @param values empty map to put each normalized path and its value into, in document order
+     */
+    void flatten(CharBuffer chars, Map<String, Object> values) {
+        try {
+            flattenEvents(chars.duplicate(), values);
+        } catch (FallbackException e) {
+            values.clear();
+            pathBuilder.setLength(0);
+            Object root = yaml.load(new ConfigFileReader.CharBufferReader(chars.duplicate()));
+            if (root instanceof Map) {
+                flattenTree((Map<?, ?>) root, values);
+            } else if (root != null) {
+                logger.warn("YAML root is not a map of config values");
+            }
+        }
+    }
+
+    private void flattenEvents(CharBuffer chars, Map<String, Object> values) {
+        pathBuilder.setLength(0);
+        anchors.clear();
+        depth = 0;
+        listKey = null;
+        String key = null; // Key of the value expected next, null when a key is expected
+        skipDepth = 0;
+
+        for (Event event : yaml.parse(new ConfigFileReader.CharBufferReader(chars))) {
+            if (skipDepth > 0) {
+                if (event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart)) {
+                    skipDepth++;
+                } else if (event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd)) {
+                    skipDepth--;
+                }
+                continue;
+            }
+
+            if (listKey != null) {
+                collectListElement(event, values);
+            } else if (event instanceof MappingStartEvent) {
+                if (depth > 0 && key == null) {
+                    logger.warn("YAML contains non-scalar key under " + pathBuilder);
+                    skipDepth = 1;
+                } else {
+                    pushMapping();
+                    if (depth > 1) {
+                        appendSegment(key);
+                    }
+                    key = null;
+                }
+            } else if (event.is(Event.ID.MappingEnd)) {
+                depth--;
+                pathBuilder.setLength(pathLengths[depth]);
+                key = null;
+            } else if (event instanceof ScalarEvent) {
+                ScalarEvent scalar = (ScalarEvent) event;
+                if (depth == 0) {
+                    logger.warn("YAML root is not a map of config values");
+                } else if (key == null) {
+                    key = scalar.getValue();
+                    if (key.equals("<<") && scalar.getImplicit().canOmitTagInPlainScalar()) {
+                        throw FALLBACK; // Merge key
+                    }
+                } else {
+                    Object value = resolveScalar(scalar);
+                    if (scalar.getAnchor() != null) {
+                        anchors.put(scalar.getAnchor(), value);
+                    }
+                    putValue(key, value, values);
+                    key = null;
+                }
+            } else if (event instanceof AliasEvent) {
+                if (key != null) {
+                    putValue(key, resolveAlias((AliasEvent) event), values);
+                    key = null;
+                } else {
+                    logger.warn("YAML contains alias key under " + pathBuilder);
+                }
+            } else if (event instanceof SequenceStartEvent) {
+                if (key == null) {
+                    logger.warn("YAML contains list that is not the value of a key under " + pathBuilder);
+                    skipDepth = 1;
+                } else {
+                    listKey = key;
+                    listSize = 0;
+                    listValid = true;
+                    inRow = false;
+                    isTable = false;
+                    rowCount = 0;
+                    key = null;
+                }
+            } // Stream and document boundaries need no handling
+        }
+    }
+
+    /**
+     * Collects the elements of a list of numbers, or the rows of a table of numbers, into the reused buffer. A copy is
+     * put into the values when the list ends: a double[] for a list, a double[][] for a table. Lists containing anything
+     * else, and tables with rows of different lengths, are dropped with a warning.
+     */
+    private void collectListElement(Event event, Map<String, Object> values) {
+        Object element;
+        if (event instanceof ScalarEvent) {
+            element = resolveScalar((ScalarEvent) event);
+        } else if (event instanceof AliasEvent) {
+            element = resolveAlias((AliasEvent) event);
+        } else if (event instanceof SequenceStartEvent && !inRow && (isTable || listSize == 0)) {
+            isTable = true;
+            inRow = true;
+            rowStart = listSize;
+            return;
+        } else if (event.is(Event.ID.SequenceEnd) && inRow) {
+            int rowLength = listSize - rowStart;
+            if (rowCount == 0) {
+                columnCount = rowLength;
+            } else if (rowLength != columnCount) {
+                listValid = false;
+            }
+            rowCount++;
+            inRow = false;
+            return;
+        } else if (event.is(Event.ID.SequenceEnd)) {
+            finishList(values);
+            return;
+        } else { // Nested collection that is not a row, skip it and drop the list
+            listValid = false;
+            skipDepth = 1;
+            return;
+        }
+
+        if (!(element instanceof Number) || (isTable && !inRow)) {
+            listValid = false;
+            return;
+        }
+        if (listSize == listBuffer.length) {
+            double[] newListBuffer = new double[listSize * 2];
+            System.arraycopy(listBuffer, 0, newListBuffer, 0, listSize);
+            listBuffer = newListBuffer;
+        }
+        listBuffer[listSize++] = ((Number) element).doubleValue();
+    }
+
+    private void finishList(Map<String, Object> values) {
+        if (!listValid) {
+            logger.warn("YAML contains list that is not numbers or a table of numbers at " + pathFor(listKey));
+        } else if (isTable) {
+            double[][] table = new double[rowCount][columnCount];
+            for (int row = 0; row < rowCount; row++) {
+                System.arraycopy(listBuffer, row * columnCount, table[row], 0, columnCount);
+            }
+            values.put(pathFor(listKey), table);
+        } else {
+            double[] list = new double[listSize];
+            System.arraycopy(listBuffer, 0, list, 0, listSize);
+            values.put(pathFor(listKey), list);
+        }
+        listKey = null;
+    }
+
+    /**
+     * Flattens a document loaded by {@link Yaml#load}, for documents the event stream can't be flattened from directly.
+     */
+    private void flattenTree(Map<?, ?> map, Map<String, Object> values) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                int length = pathBuilder.length();
+                appendSegment(key);
+                flattenTree((Map<?, ?>) value, values);
+                pathBuilder.setLength(length);
+            } else if (value instanceof List) {
+                Object list = toArray((List<?>) value);
+                if (list != null) {
+                    values.put(pathFor(key), list);
+                } else {
+                    logger.warn("YAML contains list that is not numbers or a table of numbers at " + pathFor(key));
+                }
+            } else {
+                putValue(key, value, values);
+            }
+        }
+    }
+
+    /**
+     * @return a double[] of a list of numbers, a double[][] of a list of equal length lists of numbers, otherwise null
+     */
+    private static Object toArray(List<?> list) {
+        if (list.isEmpty() || !(list.get(0) instanceof List)) {
+            return toDoubles(list);
+        }
+        double[][] table = new double[list.size()][];
+        for (int row = 0; row < table.length; row++) {
+            Object element = list.get(row);
+            table[row] = element instanceof List ? toDoubles((List<?>) element) : null;
+            if (table[row] == null || table[row].length != table[0].length) {
+                return null;
+            }
+        }
+        return table;
+    }
+
+    private static double[] toDoubles(List<?> list) {
+        double[] doubles = new double[list.size()];
+        for (int i = 0; i < doubles.length; i++) {
+            Object element = list.get(i);
+            if (!(element instanceof Number)) {
+                return null;
+            }
+            doubles[i] = ((Number) element).doubleValue();
+        }
+        return doubles;
+    }
+
+    private Object resolveAlias(AliasEvent alias) {
+        if (!anchors.containsKey(alias.getAnchor())) {
+            throw FALLBACK; // Alias of a mapping or list
+        }
+        return anchors.get(alias.getAnchor());
+    }
+
+    private void putValue(String key, Object value, Map<String, Object> values) {
+        if (isSupportedType(value)) { // if value is a config entry
+            values.put(pathFor(key), value);
+        } else {
+            logger.warn("YAML contains object of unknown type: " + (value == null ? "null" : value.toString()));
+        }
+    }
+
+    /**
+     * Opens a mapping, remembering the current path length so it can be restored when the mapping ends.
+     */
+    private void pushMapping() {
+        if (depth == pathLengths.length) {
+            int[] newPathLengths = new int[depth * 2];
+            System.arraycopy(pathLengths, 0, newPathLengths, 0, depth);
+            pathLengths = newPathLengths;
+        }
+        pathLengths[depth++] = pathBuilder.length();
+    }
+
+    private void appendSegment(String key) {
+        String segment = key.indexOf(PATH_SEPARATOR) < 0 ? key : PathNormalizer.normalize(key, false, true);
+        if (segment.isEmpty()) {
+            return;
+        }
+        if (pathBuilder.length() > 0) {
+            pathBuilder.append(PATH_SEPARATOR);
+        }
+        pathBuilder.append(segment);
+    }
+
+    /**
+     * @return the canonical id of the path of a key in the current mapping, see {@link PathNormalizer}
+     */
+    private String pathFor(String key) {
+        int length = pathBuilder.length();
+        appendSegment(key);
+        String path = pathBuilder.toString().intern();
+        pathBuilder.setLength(length);
+        return path;
+    }
+
+    /**
+     * Resolves a scalar the way SnakeYAML's safe constructor would for numbers, booleans, nulls and strings. Anything
+     * else, including sexagesimal numbers like 190:20:30, falls back to loading the whole document.
+     */
+    private Object resolveScalar(ScalarEvent scalar) {
+        String value = scalar.getValue();
+        Tag tag = scalar.getTag() != null && !scalar.getTag().equals("!") ? new Tag(scalar.getTag())
+            : resolver.resolve(NodeId.scalar, value, scalar.getImplicit().canOmitTagInPlainScalar());
+        try {
+            if (Tag.STR.equals(tag)) {
+                return value;
+            } else if ((Tag.INT.equals(tag) || Tag.FLOAT.equals(tag)) && value.indexOf(':') >= 0) {
+                throw FALLBACK;
+            } else if (Tag.INT.equals(tag)) {
+                return parseInt(value);
+            } else if (Tag.FLOAT.equals(tag)) {
+                return parseFloat(value);
+            } else if (Tag.BOOL.equals(tag)) {
+                return parseBool(value);
+            } else if (Tag.NULL.equals(tag)) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            throw FALLBACK; // Let the constructor report it
+        }
+        throw FALLBACK;
+    }
+
+    private static Number parseInt(String value) {
+        String number = value.replace("_", "");
+        int sign = 1;
+        if (number.startsWith("-")) {
+            sign = -1;
+            number = number.substring(1);
+        } else if (number.startsWith("+")) {
+            number = number.substring(1);
+        }
+        int radix = 10;
+        if (number.startsWith("0x")) {
+            radix = 16;
+            number = number.substring(2);
+        } else if (number.startsWith("0b")) {
+            radix = 2;
+            number = number.substring(2);
+        } else if (number.startsWith("0o")) {
+            radix = 8;
+            number = number.substring(2);
+        } else if (number.startsWith("0") && number.length() > 1) {
+            radix = 8;
+            number = number.substring(1);
+        }
+        BigInteger result = new BigInteger(number, radix);
+        if (sign < 0) {
+            result = result.negate();
+        }
+        if (result.bitLength() < Integer.SIZE) {
+            return result.intValue();
+        } else if (result.bitLength() < Long.SIZE) {
+            return result.longValue();
+        }
+        return result;
+    }
+
+    private static Boolean parseBool(String value) {
+        switch (value.toLowerCase()) {
+            case "yes":
+            case "true":
+            case "on":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Double parseFloat(String value) {
+        String number = value.replace("_", "").toLowerCase();
+        switch (number) {
+            case ".inf":
+            case "+.inf":
+                return Double.POSITIVE_INFINITY;
+            case "-.inf":
+                return Double.NEGATIVE_INFINITY;
+            case ".nan":
+                return Double.NaN;
+            default:
+                return Double.valueOf(number);
+        }
+    }
+
+    static boolean isSupportedType(Object value) {
+        return value instanceof Number || value instanceof Boolean || value instanceof String || value instanceof double[]
+            || value instanceof double[][];
+    }
+
+    /**
+     * Thrown on the first construct the event stream can't be flattened from. Shared and without a stack trace, since it
+     * never leaves the flattener.
+     */
+    private static final class FallbackException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private FallbackException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChangeStreamTests {
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigManager manager;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"), "primary:\n- pid.yaml\n".getBytes());
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0\n  I: 0\nElevator:\n  P: 0\n".getBytes());
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).build();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testOneBatchPerGeneration() throws IOException {
+        RecordingSubscriber subscriber = subscribe("Drive", Long.MAX_VALUE);
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 1\n  I: 2\nElevator:\n  P: 3\n".getBytes());
+        manager.reload(Collections.singleton(rootFolder.resolve("pid.yaml").toAbsolutePath()));
+        manager.reload(Collections.singleton(rootFolder.resolve("pid.yaml").toAbsolutePath())); // Changes nothing
+        manager.setOverrides(Collections.singletonMap("Elevator/P", 4)); // Outside the prefix
+
+        assertEquals(1, subscriber.batches.size());
+        ConfigChangeBatch batch = subscriber.batches.get(0);
+        assertEquals(manager.getGeneration() - 2, batch.getGeneration());
+        assertEquals("[Drive/I: 0 -> 2, Drive/P: 0 -> 1]", batch.getChanges().toString());
+
+        long generation = manager.setOverrides(Collections.singletonMap("Drive/D", 5));
+        assertEquals(2, subscriber.batches.size());
+        assertEquals(generation, subscriber.batches.get(1).getGeneration());
+        ConfigChangeBatch.Change added = subscriber.batches.get(1).getChanges().get(0);
+        assertEquals("Drive/D", added.getPath());
+        assertEquals(null, added.getOldValue());
+        assertEquals(5, added.getNewValue());
+    }
+
+    @Test
+    public void testSlowSubscriberReceivesMergedBatches() {
+        RecordingSubscriber subscriber = subscribe("", 0);
+        for (int i = 1; i <= ChangeStream.MAX_QUEUED_BATCHES + 4; i++) {
+            manager.setOverrides(Collections.singletonMap("Drive/P", i));
+        }
+        assertTrue(subscriber.batches.isEmpty());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(ChangeStream.MAX_QUEUED_BATCHES, subscriber.batches.size());
+        ConfigChangeBatch last = subscriber.batches.get(ChangeStream.MAX_QUEUED_BATCHES - 1);
+        assertEquals(manager.getGeneration(), last.getGeneration());
+        assertEquals("[Drive/P: " + (ChangeStream.MAX_QUEUED_BATCHES - 1) + " -> " + (ChangeStream.MAX_QUEUED_BATCHES + 4) + "]",
+            last.getChanges().toString());
+    }
+
+    @Test
+    public void testMergedBatchThatChangesNothingIsDropped() {
+        RecordingSubscriber subscriber = subscribe("", 0);
+        for (int i = 1; i <= ChangeStream.MAX_QUEUED_BATCHES; i++) {
+            manager.setOverrides(Collections.singletonMap("Drive/P", i));
+        }
+        manager.setOverrides(Collections.singletonMap("Drive/P", ChangeStream.MAX_QUEUED_BATCHES - 1)); // Changed back
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(ChangeStream.MAX_QUEUED_BATCHES - 1, subscriber.batches.size());
+        subscriber.batches.forEach(batch -> assertFalse(batch.getChanges().isEmpty(), batch.toString()));
+    }
+
+    @Test
+    public void testCompletedOnShutdown() {
+        RecordingSubscriber subscriber = subscribe("", Long.MAX_VALUE);
+        manager.shutdown();
+        assertTrue(subscriber.completed);
+    }
+
+    /**
+     * Subscribes with an executor running signals on the calling thread, so every batch is delivered before the change
+     * that published it returns.
+     */
+    private RecordingSubscriber subscribe(String prefix, long initialRequest) {
+        RecordingSubscriber subscriber = new RecordingSubscriber(initialRequest);
+        manager.getChangePublisher(prefix, Runnable::run).subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<ConfigChangeBatch> {
+
+        private final long initialRequest;
+        private final List<ConfigChangeBatch> batches = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private boolean completed;
+
+        private RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(ConfigChangeBatch batch) {
+            batches.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throw new AssertionError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigFileReaderTests {
+
+    @TempDir
+    Path rootFolder;
+    private Path pidFile;
+    private YamlConfigManager manager;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"), "primary:\n- pid.yaml\n".getBytes());
+        pidFile = rootFolder.resolve("pid.yaml");
+        Files.write(pidFile, "Drive:\n  P: 1\n".getBytes());
+    }
+
+    @AfterEach
+    public void shutdown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testMappedFileIsReleasedAfterDecoding() throws IOException {
+        StringBuilder yaml = new StringBuilder();
+        for (int i = 0; yaml.length() < 512 * 1024; i++) {
+            yaml.append("Key").append(i).append(": ").append(i).append('\n');
+        }
+        Path largeFile = rootFolder.resolve("large.yaml");
+        Files.write(largeFile, yaml.toString().getBytes());
+
+        ConfigFileReader reader = new ConfigFileReader();
+        reader.read(largeFile);
+        assertEquals(Files.size(largeFile), reader.size());
+        assertArrayEquals(ConfigFile.newDigest().digest(Files.readAllBytes(largeFile)), reader.hash());
+        CharBuffer chars = reader.decodeChars();
+        reader.release();
+        assertEquals(0, reader.size());
+        assertEquals(yaml.toString(), chars.toString()); // Decoded characters outlive the mapping
+    }
+
+    @Test
+    public void testOnlySmallFileBuffersAreRetained() throws IOException {
+        Path largeFile = rootFolder.resolve("large.yaml");
+        Files.write(largeFile, new byte[1024 * 1024]);
+        ConfigFileReader reader = new ConfigFileReader();
+        reader.read(pidFile);
+        CharBuffer small = reader.decodeChars();
+
+        reader.read(largeFile);
+        CharBuffer large = reader.decodeChars();
+        assertEquals(1024 * 1024, large.remaining());
+        reader.read(largeFile);
+        assertNotSame(large, reader.decodeChars()); // Not kept for the next file
+
+        reader.read(pidFile);
+        assertSame(small, reader.decodeChars());
+        assertEquals("Drive:\n  P: 1\n", small.toString());
+    }
+
+    @Test
+    public void testUnchangedStatSkipsRead() throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(pidFile, old);
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).build();
+        assertEquals(1, manager.getEntry("Drive/P").getInt(0));
+
+        Files.write(pidFile, "Drive:\n  P: 2\n".getBytes()); // Same size
+        Files.setLastModifiedTime(pidFile, old);
+        manager.reload(Collections.singleton(pidFile.toAbsolutePath()));
+        assertEquals(1, manager.getEntry("Drive/P").getInt(0)); // Not read, since neither its time nor size changed
+
+        Files.setLastModifiedTime(pidFile, FileTime.fromMillis(old.toMillis() + 1000));
+        manager.reload(Collections.singleton(pidFile.toAbsolutePath()));
+        assertEquals(2, manager.getEntry("Drive/P").getInt(0));
+    }
+
+    @Test
+    public void testRecentlyModifiedFilesAreHashed() throws IOException {
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).build();
+        FileTime modified = Files.getLastModifiedTime(pidFile);
+
+        Files.write(pidFile, "Drive:\n  P: 2\n".getBytes()); // Same size, within the same timestamp
+        Files.setLastModifiedTime(pidFile, modified);
+        manager.reload(Collections.singleton(pidFile.toAbsolutePath()));
+        assertEquals(2, manager.getEntry("Drive/P").getInt(0));
+    }
+}
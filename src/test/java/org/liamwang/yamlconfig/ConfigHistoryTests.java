@@ -0,0 +1,135 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigHistoryTests {
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigManager manager;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"), "primary:\n- pid.yaml\n".getBytes());
+        Files.write(rootFolder.resolve("pid.yaml"), pid(1, "first").getBytes());
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).historySize(4).build();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testPointInTimeReads() throws IOException {
+        long first = manager.getGeneration();
+        long second = reload(pid(2, "second"));
+        YamlConfigEntry p = manager.getEntry("Drive/P");
+        YamlConfigEntry name = manager.getEntry("Drive/Name");
+        assertEquals(first + 1, second);
+        assertEquals(1, p.getAsDoubleAsOf(first, 0));
+        assertEquals("first", name.getStringAsOf(first, null));
+        assertEquals(2, p.getLongAsOf(second, 0));
+        assertEquals("second", name.getStringAsOf(second, null));
+
+        ConfigSnapshot secondSnapshot = manager.getSnapshot(second);
+        YamlConfigPrefix.View view = manager.getPrefix("Drive").pinAsOf(first);
+        reload(pid(3, "third"));
+        assertSame(secondSnapshot, manager.getSnapshot(second)); // History holds the published instances
+        assertEquals(1, view.getDouble("P", 0));
+        assertEquals(first, view.getGeneration());
+    }
+
+    @Test
+    public void testOldGenerationsAreEvicted() throws IOException {
+        long first = manager.getGeneration();
+        for (int i = 2; i <= 6; i++) {
+            reload(pid(i, "gen" + i));
+        }
+        long current = manager.getGeneration();
+        assertEquals(current - 3, manager.getOldestGeneration());
+        assertEquals(3, manager.getEntry("Drive/P").getAsDoubleAsOf(current - 3, 0));
+        assertThrows(IllegalArgumentException.class, () -> manager.getEntry("Drive/P").getAsDoubleAsOf(first, 0));
+        assertThrows(IllegalArgumentException.class, () -> manager.rollback(first));
+        assertThrows(IllegalArgumentException.class, () -> manager.rollback(current + 1));
+    }
+
+    @Test
+    public void testRollbackRestoresValuesAndFiresChangedListeners() throws IOException {
+        AtomicInteger pChanges = new AtomicInteger();
+        AtomicInteger nameChanges = new AtomicInteger();
+        AtomicInteger iChanges = new AtomicInteger();
+        manager.getEntry("Drive/P").registerListener(false, entry -> pChanges.incrementAndGet());
+        manager.getEntry("Drive/Name").registerListener(false, entry -> nameChanges.incrementAndGet());
+        manager.getEntry("Drive/I").registerListener(false, entry -> iChanges.incrementAndGet());
+
+        long first = manager.getGeneration();
+        reload(pid(2, "first") + "  I: 5\n");
+        reload(pid(2, "first") + "  I: 6\n");
+        assertEquals(1, pChanges.get());
+        assertEquals(2, iChanges.get());
+
+        long rolledBack = manager.rollback(first);
+        assertEquals(first + 3, rolledBack);
+        assertEquals(rolledBack, manager.getGeneration());
+        assertEquals(1, manager.getEntry("Drive/P").getInt(0));
+        assertEquals(-1, manager.getEntry("Drive/I").getInt(-1));
+        assertEquals(2, pChanges.get());
+        assertEquals(3, iChanges.get());
+        assertEquals(0, nameChanges.get()); // Same value in both generations
+
+        manager.rollback(rolledBack); // Rolling back to the current values changes nothing
+        assertEquals(2, pChanges.get());
+
+        // The next reload rebuilds the config from the files again
+        manager.reload(Collections.singleton(rootFolder.resolve("pid.yaml").toAbsolutePath()));
+        assertEquals(2, manager.getEntry("Drive/P").getInt(0));
+        assertEquals(6, manager.getEntry("Drive/I").getInt(0));
+        assertEquals(3, pChanges.get());
+    }
+
+    @Test
+    public void testOverridesSetAfterRollbackKeepIt() throws IOException {
+        long first = manager.getGeneration();
+        reload(pid(2, "second"));
+        manager.rollback(first);
+        AtomicInteger pChanges = new AtomicInteger();
+        manager.getEntry("Drive/P").registerListener(false, entry -> pChanges.incrementAndGet());
+
+        manager.setOverrides(Collections.singletonMap("Drive/I", 3));
+        assertEquals(3, manager.getEntry("Drive/I").getInt(0));
+        assertEquals(1, manager.getEntry("Drive/P").getInt(0));
+        assertEquals("first", manager.getEntry("Drive/Name").getString(null));
+        manager.setOverrides(Collections.singletonMap("Drive/I", null));
+        assertEquals(-1, manager.getEntry("Drive/I").getInt(-1));
+        assertEquals(1, manager.getEntry("Drive/P").getInt(0));
+        assertEquals(0, pChanges.get());
+
+        manager.reload(Collections.singleton(rootFolder.resolve("pid.yaml").toAbsolutePath())); // Ends the rollback
+        assertEquals(2, manager.getEntry("Drive/P").getInt(0));
+        assertEquals(1, pChanges.get());
+    }
+
+    private static String pid(int p, String name) {
+        return "Drive:\n  P: " + p + "\n  Name: " + name + "\n";
+    }
+
+    private long reload(String content) throws IOException {
+        Path pidFile = rootFolder.resolve("pid.yaml");
+        Files.write(pidFile, content.getBytes());
+        manager.reload(Collections.singleton(pidFile.toAbsolutePath()));
+        return manager.getGeneration();
+    }
+}
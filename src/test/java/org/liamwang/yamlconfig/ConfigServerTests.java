@@ -0,0 +1,202 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigServerTests {
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigManager manager;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"), "primary:\n- pid.yaml\n".getBytes());
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0.5\n  I: 0\n".getBytes());
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).persistOverrides("overrides.yaml").build();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testOverridesShadowAndRestoreFileValues() throws IOException, InterruptedException {
+        long generation = manager.getGeneration();
+        Map<String, Object> values = new HashMap<>();
+        values.put("Drive/P", 2.0);
+        values.put("Drive/Table", new double[][]{{0, 1}, {1, 3}});
+        assertEquals(generation + 1, manager.setOverrides(values));
+        assertEquals(2.0, manager.getEntry("Drive/P").getAsDouble(0));
+        assertEquals(2.0, manager.getEntry("Drive/Table").interpolate(0.5, 0));
+        assertEquals(2, manager.getOverrides().size());
+
+        manager.setOverrides(Collections.singletonMap("Drive/P", null));
+        assertEquals(0.5, manager.getEntry("Drive/P").getAsDouble(0));
+        assertEquals(Collections.singleton("Drive/Table"), manager.getOverrides().keySet());
+
+        assertThrows(IllegalArgumentException.class, () -> manager.setOverrides(Collections.singletonMap("Drive/P", new Object())));
+
+        manager.shutdown(); // Waits for the pending write
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).persistOverrides("overrides.yaml").build();
+        assertEquals(3.0, manager.getEntry("Drive/Table").getTableValue(1, 1, 0));
+        assertEquals(0.5, manager.getEntry("Drive/P").getAsDouble(0));
+    }
+
+    @Test
+    public void testSetGetAndRemove() throws IOException {
+        try (ConfigServer server = manager.startServer(0); Client client = new Client(server.getPort())) {
+            long generation = manager.getGeneration();
+            assertEquals("ok " + (generation + 1), client.send("set Drive/P=1.5; Name=\"a;b\"; Drive/Table=[[0, 1], [2, 3]]"));
+            assertEquals(1.5, manager.getEntry("Drive/P").getAsDouble(0));
+            assertEquals("values Drive/P=1.5; Name=\"a;b\"; Drive/Table=[[0.0, 1.0], [2.0, 3.0]]; Missing=null",
+                client.send("get Drive/P Name Drive/Table Missing"));
+
+            assertEquals("ok " + (generation + 2), client.send("set Drive/P=null"));
+            assertEquals("values Drive/P=0.5", client.send("get Drive/P"));
+        }
+    }
+
+    @Test
+    public void testPipelinedCommandsAreAnsweredInOrder() throws IOException {
+        try (ConfigServer server = manager.startServer(0); Client client = new Client(server.getPort())) {
+            long generation = manager.getGeneration();
+            client.writer.println("set Drive/P=2");
+            client.writer.println("get Drive/P");
+            client.writer.println("frobnicate");
+            assertEquals("ok " + (generation + 1), client.reader.readLine());
+            assertEquals("values Drive/P=2", client.reader.readLine());
+            assertTrue(client.reader.readLine().startsWith("error "));
+        }
+    }
+
+    @Test
+    public void testSlowListenerDoesNotStallOtherConnections() throws IOException, InterruptedException {
+        CountDownLatch listenerRunning = new CountDownLatch(1);
+        CountDownLatch finishListener = new CountDownLatch(1);
+        manager.getEntry("Drive/P").registerListener(false, entry -> {
+            listenerRunning.countDown();
+            try {
+                finishListener.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try (ConfigServer server = manager.startServer(0); Client setter = new Client(server.getPort());
+            Client reader = new Client(server.getPort())) {
+            setter.writer.println("set Drive/P=1");
+            assertTrue(listenerRunning.await(5, TimeUnit.SECONDS));
+            assertEquals("values Drive/I=0", reader.send("get Drive/I")); // Answered while the listener runs
+            finishListener.countDown();
+            assertEquals("ok " + manager.getGeneration(), setter.reader.readLine());
+        } finally {
+            finishListener.countDown();
+        }
+    }
+
+    @Test
+    public void testSubscribeReceivesChanges() throws IOException {
+        try (ConfigServer server = manager.startServer(0); Client client = new Client(server.getPort())) {
+            assertEquals("ok", client.send("subscribe Drive"));
+            manager.setOverrides(Collections.singletonMap("Other", 1));
+            long generation = manager.setOverrides(Collections.singletonMap("Drive/I", 0.25));
+            assertEquals("changed " + generation + " Drive/I=0.25", client.reader.readLine());
+        }
+    }
+
+    @Test
+    public void testMalformedCommandsAreRejected() throws IOException {
+        try (ConfigServer server = manager.startServer(0); Client client = new Client(server.getPort())) {
+            long generation = manager.getGeneration();
+            assertTrue(client.send("frobnicate").startsWith("error "));
+            assertTrue(client.send("set Drive/P").startsWith("error "));
+            assertTrue(client.send("set Drive/P=\"open").startsWith("error "));
+            assertTrue(client.send("set Drive/P=[[1, 2], [3]]").startsWith("error "));
+            assertTrue(client.send("set Drive/P={a: 1}").startsWith("error "));
+            assertTrue(client.send("set Drive/P=[1, two]").startsWith("error "));
+            assertEquals(generation, manager.getGeneration());
+            assertEquals("values Drive/P=0.5", client.send("get Drive/P")); // Still serving after errors
+        }
+    }
+
+    @Test
+    public void testTooLongLineIsSkippedWhole() throws IOException {
+        StringBuilder line = new StringBuilder("get ");
+        while (line.length() < 64 * 1024) {
+            line.append('a');
+        }
+        line.append("set Drive/P=7"); // Would run on its own if only the first 64 KiB were dropped
+        try (ConfigServer server = manager.startServer(0); Client client = new Client(server.getPort())) {
+            assertEquals("error line too long", client.send(line.toString()));
+            assertEquals("values Drive/P=0.5", client.send("get Drive/P"));
+        }
+    }
+
+    @Test
+    public void testTaggedValuesAreNotConstructed() throws IOException {
+        Path created = rootFolder.resolve("created");
+        try (ConfigServer server = manager.startServer(0); Client client = new Client(server.getPort())) {
+            String reply = client.send("set Drive/P=!!java.io.FileOutputStream [\"" + created + "\"]");
+            assertTrue(reply.startsWith("error "), reply);
+            assertFalse(Files.exists(created));
+            assertTrue(client.send("set Drive/P=!!javax.script.ScriptEngineManager []").startsWith("error "));
+            assertEquals(0.5, manager.getEntry("Drive/P").getAsDouble(0));
+        }
+    }
+
+    @Test
+    public void testOnlyOneServer() throws IOException {
+        ConfigServer server = manager.startServer(0);
+        try {
+            assertThrows(IllegalStateException.class, () -> manager.startServer(0));
+        } finally {
+            server.close();
+        }
+    }
+
+    private static final class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final PrintWriter writer;
+
+        private Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setSoTimeout(5000);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            writer = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        private String send(String line) throws IOException {
+            writer.println(line);
+            return reader.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
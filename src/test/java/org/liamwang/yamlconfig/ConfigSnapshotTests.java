@@ -0,0 +1,80 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class ConfigSnapshotTests {
+
+    @Test
+    public void testUnchangedValuesAreShared() {
+        ConfigSnapshot first = new ConfigSnapshot(1, values());
+        ConfigSnapshot second = first.withChanges(2, values());
+        for (String path : values().keySet()) {
+            assertSame(first.getValue(path), second.getValue(path), path);
+        }
+        assertTrue(second.changedPathsSince(first).isEmpty());
+
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("Drive/Gains", new double[]{1, 2, 4});
+        changes.put("Drive/Table", new double[][]{{0, 1}, {1, 3}});
+        changes.put("Drive/P", null);
+        ConfigSnapshot third = second.withChanges(3, changes);
+        assertNotSame(second.getValue("Drive/Table"), third.getValue("Drive/Table"));
+        assertEquals(3.0, third.getValue("Drive/Table").getTableValue(1, 1, 0));
+        assertEquals(Set.of("Drive/Gains", "Drive/Table", "Drive/P"), third.changedPathsSince(second));
+        assertSame(second.getValue("Drive/Name"), third.getValue("Drive/Name"));
+    }
+
+    @Test
+    public void testSameValueMatchesCopies() {
+        ConfigSnapshot snapshot = new ConfigSnapshot(1, values());
+        values().forEach((path, value) -> {
+            assertTrue(snapshot.getValue(path).sameValue(value), path);
+            assertTrue(snapshot.getValue(path).sameValue(ConfigValue.of(value)), path);
+        });
+        ConfigValue table = snapshot.getValue("Drive/Table");
+        assertEquals(false, table.sameValue(new double[][]{{0, 1, 1}, {2}}));
+        assertEquals(false, table.sameValue(new double[]{0, 1, 1, 2}));
+        assertEquals(false, snapshot.getValue("Drive/Gains").sameValue(new double[]{1, 2}));
+        assertTrue(ConfigValue.of(new double[]{Double.NaN}).sameValue(new double[]{Double.NaN}));
+    }
+
+    @Test
+    public void testRollbackThroughTrie() {
+        ConfigSnapshot first = new ConfigSnapshot(1, values());
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("Drive/P", 0.75);
+        changes.put("Drive/New", 1);
+        ConfigSnapshot second = first.withChanges(2, changes);
+        ConfigSnapshot third = second.withChanges(3, Map.of("Drive/Name", "right"));
+
+        ConfigSnapshot rollback = first.withGeneration(4);
+        assertEquals(4, rollback.getGeneration());
+        assertEquals(Set.of("Drive/P", "Drive/New", "Drive/Name"), rollback.changedPathsSince(third));
+        assertEquals(first.getValues().keySet(), rollback.getValues().keySet());
+        values().keySet().forEach(path -> assertSame(first.getValue(path), rollback.getValue(path), path));
+        assertEquals(ConfigValue.NONE, rollback.getValue("Drive/New"));
+
+        ConfigSnapshot rollForward = third.withGeneration(5);
+        assertEquals(Set.of("Drive/P", "Drive/New", "Drive/Name"), rollForward.changedPathsSince(rollback));
+        assertEquals(0.75, rollForward.get("Drive/P"));
+    }
+
+    private static Map<String, Object> values() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("Drive/P", 0.5);
+        values.put("Drive/F", 2);
+        values.put("Drive/Name", "left");
+        values.put("Drive/Enabled", true);
+        values.put("Drive/Gains", new double[]{1, 2, 3});
+        values.put("Drive/Table", new double[][]{{0, 1}, {1, 2}});
+        return values;
+    }
+}
@@ -0,0 +1,86 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigInteger;
+import org.junit.jupiter.api.Test;
+
+public class ConfigValueTests {
+
+    private static final ConfigValue TABLE = ConfigValue.of(new double[][]{{0, 0, 10}, {1, 10, 20}, {3, 30, 0}});
+
+    @Test
+    public void testInterpolateBetweenRows() {
+        assertEquals(5, TABLE.interpolate(0.5, 1, -1));
+        assertEquals(20, TABLE.interpolate(2, 1, -1));
+        assertEquals(10, TABLE.interpolate(2, 2, -1));
+        assertEquals(10, TABLE.interpolate(1, 1, -1)); // Exactly on a row
+    }
+
+    @Test
+    public void testInterpolateClampsToEdgeRows() {
+        assertEquals(0, TABLE.interpolate(0, 1, -1));
+        assertEquals(0, TABLE.interpolate(-5, 1, -1));
+        assertEquals(10, TABLE.interpolate(Double.NEGATIVE_INFINITY, 2, -1));
+        assertEquals(30, TABLE.interpolate(3, 1, -1));
+        assertEquals(0, TABLE.interpolate(100, 2, -1));
+        assertEquals(30, TABLE.interpolate(Double.POSITIVE_INFINITY, 1, -1));
+    }
+
+    @Test
+    public void testInterpolateSingleRow() {
+        ConfigValue row = ConfigValue.of(new double[][]{{2, 7}});
+        assertEquals(7, row.interpolate(-1, 1, -1));
+        assertEquals(7, row.interpolate(2, 1, -1));
+        assertEquals(7, row.interpolate(5, 1, -1));
+    }
+
+    @Test
+    public void testInterpolateNaN() {
+        assertEquals(Double.NaN, TABLE.interpolate(Double.NaN, 1, -1));
+        assertEquals(Double.NaN, ConfigValue.of(new double[][]{{2, 7}}).interpolate(Double.NaN, 1, -1));
+        assertEquals(Double.NaN, ConfigValue.of(new double[][]{{0, 0}, {1, Double.NaN}}).interpolate(0.5, 1, -1));
+    }
+
+    @Test
+    public void testInterpolateDuplicateX() {
+        ConfigValue step = ConfigValue.of(new double[][]{{0, 0}, {1, 0}, {1, 10}, {2, 10}});
+        assertEquals(0, step.interpolate(0.5, 1, -1));
+        assertEquals(10, step.interpolate(1.5, 1, -1));
+    }
+
+    @Test
+    public void testInterpolateInvalidColumnsAndValues() {
+        assertEquals(-1, TABLE.interpolate(1, 0, -1)); // The x column
+        assertEquals(-1, TABLE.interpolate(1, 3, -1));
+        assertEquals(-1, TABLE.interpolate(1, -1, -1));
+        assertEquals(-1, ConfigValue.of(new double[0][]).interpolate(1, 1, -1));
+        assertEquals(-1, ConfigValue.of(new double[]{0, 1}).interpolate(1, 1, -1));
+        assertEquals(-1, ConfigValue.of(2).interpolate(1, 1, -1));
+        assertEquals(-1, ConfigValue.NONE.interpolate(1, 1, -1));
+    }
+
+    @Test
+    public void testWholeNumbersReadAsIntegers() {
+        assertEquals(2, ConfigValue.of(2).getInt(-1));
+        assertEquals(2, ConfigValue.of(2.0).getInt(-1));
+        assertEquals(-3, ConfigValue.of(-3L).getInt(-1));
+        assertEquals(1L << 40, ConfigValue.of(1L << 40).getLong(-1));
+        assertEquals(1L << 40, ConfigValue.of((double) (1L << 40)).getLong(-1));
+        assertEquals(Long.MIN_VALUE, ConfigValue.of(BigInteger.valueOf(Long.MIN_VALUE)).getLong(-1));
+    }
+
+    @Test
+    public void testOtherNumbersReadAsTheDefault() {
+        assertEquals(-1, ConfigValue.of(2.7).getInt(-1));
+        assertEquals(-1, ConfigValue.of(-2.7).getLong(-1));
+        assertEquals(-1, ConfigValue.of(Double.NaN).getInt(-1));
+        assertEquals(-1, ConfigValue.of(Double.POSITIVE_INFINITY).getLong(-1));
+        assertEquals(-1, ConfigValue.of(1L << 40).getInt(-1)); // Would wrap to 0
+        assertEquals(-1, ConfigValue.of((double) Integer.MAX_VALUE + 1).getInt(-1));
+        assertEquals(-1, ConfigValue.of(0x1p63).getLong(-1)); // Would clamp to Long.MAX_VALUE
+        assertEquals(-1, ConfigValue.of(new BigInteger("99999999999999999999")).getLong(-1));
+        assertEquals(-1, ConfigValue.of("2").getInt(-1));
+        assertEquals(-1, ConfigValue.NONE.getLong(-1));
+    }
+}
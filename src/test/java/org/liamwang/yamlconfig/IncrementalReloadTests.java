@@ -0,0 +1,137 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IncrementalReloadTests {
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigManager manager;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        write("config-meta.yaml", "primary:\n- drive.yaml\n- elevator.yaml\noverride:\n  ferb:\n  - ferb.yaml\n");
+        write("drive.yaml", "Drive:\n  P: 1\n  Gains: [1, 2]\n");
+        write("elevator.yaml", "Elevator:\n  P: 4\n");
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).robotName("ferb").watch(false).build();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testOnlyChangedFilesAreRead() throws IOException {
+        write("elevator.yaml", "Elevator:\n  P: 5\n"); // Not reported as changed
+        reload("drive.yaml", "Drive:\n  P: 2\n  Gains: [1, 2]\n");
+        assertEquals(2, manager.getEntry("Drive/P").getInt(0));
+        assertEquals(4, manager.getEntry("Elevator/P").getInt(0));
+
+        manager.reload(Collections.singleton(path("elevator.yaml")));
+        assertEquals(5, manager.getEntry("Elevator/P").getInt(0));
+    }
+
+    @Test
+    public void testUnchangedValuesAreShared() throws IOException {
+        ConfigSnapshot before = manager.getSnapshot();
+        reload("drive.yaml", "Drive:\n  P: 2\n  Gains: [1, 2]\n");
+        ConfigSnapshot after = manager.getSnapshot();
+        assertEquals(before.getGeneration() + 1, after.getGeneration());
+        assertSame(before.getValue("Elevator/P"), after.getValue("Elevator/P")); // From a file that was not re-read
+        assertSame(before.getValue("Drive/Gains"), after.getValue("Drive/Gains")); // Re-read, but unchanged
+        assertEquals(Collections.singleton("Drive/P"), after.changedPathsSince(before));
+    }
+
+    @Test
+    public void testOverrideFileCreatedAndDeleted() throws IOException {
+        reload("ferb.yaml", "Drive:\n  P: 10\n"); // Listed in the meta file but missing until now
+        assertEquals(10, manager.getEntry("Drive/P").getInt(0));
+
+        Files.delete(rootFolder.resolve("ferb.yaml"));
+        manager.reload(Collections.singleton(path("ferb.yaml")));
+        assertEquals(1, manager.getEntry("Drive/P").getInt(0));
+    }
+
+    @Test
+    public void testMetaFileChangesLayers() throws IOException {
+        write("extra.yaml", "Drive:\n  P: 3\n  I: 7\n");
+        reload("config-meta.yaml", "primary:\n- drive.yaml\n- elevator.yaml\n- extra.yaml\n");
+        assertEquals(3, manager.getEntry("Drive/P").getInt(0));
+        assertEquals(7, manager.getEntry("Drive/I").getInt(0));
+
+        reload("config-meta.yaml", "primary:\n- extra.yaml\n- drive.yaml\n"); // Reordered, elevator.yaml dropped
+        assertEquals(1, manager.getEntry("Drive/P").getInt(0));
+        assertEquals(7, manager.getEntry("Drive/I").getInt(0));
+        assertEquals(-1, manager.getEntry("Elevator/P").getInt(-1));
+    }
+
+    @Test
+    public void testParallelParseMergesInSerialOrder() throws IOException {
+        StringBuilder meta = new StringBuilder("primary:\n");
+        Set<Path> files = new HashSet<>();
+        for (int i = 0; i < 12; i++) {
+            meta.append("- layer").append(i).append(".yaml\n");
+            files.add(path("layer" + i + ".yaml"));
+        }
+        meta.append("override:\n  ferb:\n  - ferb.yaml\n");
+        files.add(path("ferb.yaml"));
+        write("config-meta.yaml", meta.toString());
+        writeLayers(0);
+        YamlConfigManager parallel = YamlConfigManager.builder().rootFolder(rootFolder).robotName("ferb").watch(false)
+            .parseParallelism(4).snapshotFileName("parallel-snapshot.bin").build();
+        try {
+            manager.reload(Collections.singleton(path("config-meta.yaml")));
+            assertEquals(manager.getSnapshot().getValues(), parallel.getSnapshot().getValues());
+            assertEquals(11, manager.getEntry("Shared/P").getInt(-1)); // The last primary layer wins
+            assertEquals(100, manager.getEntry("Shared/I").getInt(-1)); // The override wins over every layer
+
+            writeLayers(1000);
+            manager.reload(files);
+            parallel.reload(files);
+            assertEquals(manager.getSnapshot().getValues(), parallel.getSnapshot().getValues());
+            assertEquals(1011, parallel.getEntry("Shared/P").getInt(-1));
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    /**
+     * Writes layers that all set the same keys, so any change in merge order changes the merged values.
+     */
+    private void writeLayers(int base) throws IOException {
+        for (int i = 0; i < 12; i++) {
+            StringBuilder layer = new StringBuilder("Shared:\n  P: " + (base + i) + "\n  I: " + (base + i) + "\n");
+            for (int key = 0; key < 200; key++) { // Large enough that parsing the layers overlaps
+                layer.append("  K").append(key).append(": ").append(key % (i + 1) == 0 ? base + i : -1).append('\n');
+            }
+            write("layer" + i + ".yaml", layer.toString());
+        }
+        write("ferb.yaml", "Shared:\n  I: " + (base + 100) + "\n");
+    }
+
+    private Path path(String file) {
+        return rootFolder.resolve(file).toAbsolutePath();
+    }
+
+    private void write(String file, String content) throws IOException {
+        Files.write(rootFolder.resolve(file), content.getBytes());
+    }
+
+    private void reload(String file, String content) throws IOException {
+        write(file, content);
+        manager.reload(Collections.singleton(path(file)));
+    }
+}
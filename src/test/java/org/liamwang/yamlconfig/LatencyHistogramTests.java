@@ -0,0 +1,52 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTests {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void testBucketUpperBounds() {
+        long[][] boundsByValue = {{0, 1}, {1, 2}, {2, 4}, {3, 4}, {4, 8}, {7, 8}, {1023, 1024}, {1024, 2048}};
+        for (long[] valueAndBound : boundsByValue) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(valueAndBound[0]);
+            histogram.record(1L << 40); // Keeps the max from clamping the lower bucket
+            assertEquals(valueAndBound[1], histogram.getPercentileNanos(50), "value " + valueAndBound[0]);
+        }
+    }
+
+    @Test
+    public void testPercentilesAreClampedToTheMax() {
+        for (long nanos = 1; nanos <= 100; nanos++) {
+            histogram.record(nanos);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(2, histogram.getPercentileNanos(0)); // The smallest value, 1, is below 2
+        assertEquals(64, histogram.getPercentileNanos(50)); // 50 is in [32, 64)
+        assertEquals(100, histogram.getPercentileNanos(99)); // 99 is in [64, 128), clamped to the max
+        assertEquals(histogram.getPercentileNanos(0), histogram.getPercentileNanos(-5));
+        assertEquals(histogram.getPercentileNanos(100), histogram.getPercentileNanos(150));
+    }
+
+    @Test
+    public void testExtremeValues() {
+        histogram.record(-5); // A clock step back, recorded as zero
+        assertEquals(0, histogram.getPercentileNanos(100));
+        histogram.record(Long.MAX_VALUE); // In the last bucket, whose bound does not fit in a long
+        assertEquals(2, histogram.getCount());
+        assertEquals(Long.MAX_VALUE, histogram.getMaxNanos());
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(100));
+        assertEquals(1, histogram.getPercentileNanos(50)); // Bound of the zero bucket
+    }
+}
@@ -0,0 +1,92 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LazyLoadingTests {
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigManager manager;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        write("config-meta.yaml", "primary:\n- drive.yaml\n- more-drive.yaml\n- arm.yaml\n- flow.yaml\n");
+        write("drive.yaml", "Drive:\n  P: 1\n  I: 2\nElevator:\n  P: 3\n");
+        write("more-drive.yaml", "Drive/I: 20\nDrive/D: 30\n"); // Same top-level key, split across files
+        write("arm.yaml", "Arm:\n  P: 4\n");
+        write("flow.yaml", "{Shooter: {P: 5}}\n"); // Cannot be scanned, so it is parsed up front
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).lazyLoading(true).build();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testOnlyFilesOfTheReadSubtreeAreParsed() {
+        assertFalse(isLoaded("Drive/P"));
+        assertEquals(5, manager.getSnapshot().get("Shooter/P"));
+
+        assertEquals(20, manager.getEntry("Drive/I").getInt(-1)); // The later file wins
+        assertEquals(1, manager.getSnapshot().get("Drive/P"));
+        assertEquals(30, manager.getSnapshot().get("Drive/D"));
+        assertEquals(3, manager.getSnapshot().get("Elevator/P")); // Parsed along with Drive in the same file
+        assertFalse(isLoaded("Arm/P"));
+
+        assertEquals(4, manager.getPrefix("Arm").pin().getInt("P", -1));
+    }
+
+    @Test
+    public void testMissingKeysLoadTheirSubtreeOnce() {
+        YamlConfigEntry missing = manager.getEntry("Drive/Missing");
+        assertEquals(-1, missing.getInt(-1));
+        long generation = manager.getGeneration();
+        assertEquals(1, manager.getSnapshot().get("Drive/P"));
+
+        assertEquals(-1, missing.getInt(-1));
+        assertEquals(-1, manager.getEntry("Drive/AlsoMissing").getInt(-1));
+        assertEquals(-1, manager.getEntry("Nowhere/Missing").getInt(-1)); // Loads nothing, but publishes once
+        assertEquals(-1, manager.getEntry("Nowhere/Missing").getInt(-1));
+        assertEquals(generation + 1, manager.getGeneration());
+
+        long set = manager.setOverrides(Collections.singletonMap("Elevator/P", 6));
+        assertEquals(-1, missing.getInt(-1)); // Rebinds to the new generation without loading again
+        assertEquals(set, manager.getGeneration());
+    }
+
+    @Test
+    public void testChangedFileIsParsedOnceItHasALoadedKey() throws IOException {
+        assertEquals(1, manager.getEntry("Drive/P").getInt(-1));
+        write("arm.yaml", "Arm:\n  P: 4\nDrive:\n  F: 7\n");
+        manager.reload(Collections.singleton(rootFolder.resolve("arm.yaml").toAbsolutePath()));
+        assertEquals(7, manager.getSnapshot().get("Drive/F"));
+        assertEquals(4, manager.getSnapshot().get("Arm/P"));
+
+        write("more-drive.yaml", "Drive/I: 21\n");
+        manager.reload(Collections.singleton(rootFolder.resolve("more-drive.yaml").toAbsolutePath()));
+        assertEquals(21, manager.getSnapshot().get("Drive/I"));
+        assertFalse(isLoaded("Drive/D"));
+    }
+
+    /**
+     * @return whether the path is in the current generation, without loading its subtree
+     */
+    private boolean isLoaded(String path) {
+        return manager.getSnapshot().getValue(path).isPresent();
+    }
+
+    private void write(String file, String content) throws IOException {
+        Files.write(rootFolder.resolve(file), content.getBytes());
+    }
+}
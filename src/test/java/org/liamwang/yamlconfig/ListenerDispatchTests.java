@@ -0,0 +1,205 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ListenerDispatchTests {
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigManager manager;
+
+    private final AtomicInteger driveP = new AtomicInteger();
+    private final AtomicInteger driveI = new AtomicInteger();
+    private final AtomicInteger drive = new AtomicInteger();
+    private final AtomicInteger elevator = new AtomicInteger();
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"),
+            "primary:\n- drive.yaml\n- elevator.yaml\noverride:\n  ferb:\n  - ferb.yaml\n".getBytes());
+        write("drive.yaml", "Drive:\n  P: 1\n  I: 2\n  D: 3\n");
+        write("elevator.yaml", "Elevator:\n  P: 4\n");
+        write("ferb.yaml", "Drive:\n  D: 30\n");
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).robotName("ferb").watch(false).build();
+
+        manager.getEntry("Drive/P").registerListener(entry -> driveP.incrementAndGet());
+        manager.getEntry("Drive/I").registerListener(entry -> driveI.incrementAndGet());
+        manager.getPrefix("Drive").registerPrefixListener(prefix -> drive.incrementAndGet());
+        manager.getPrefix("Elevator").registerPrefixListener(prefix -> elevator.incrementAndGet());
+        resetCounts(); // Listeners run once when registered
+    }
+
+    @AfterEach
+    public void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testListenersFireOncePerChange() throws IOException {
+        reload("drive.yaml", "Drive:\n  P: 10\n  I: 20\n  D: 3\n");
+        assertCounts(1, 1, 1, 0); // The prefix listener runs once for both changes
+        assertEquals(10, manager.getEntry("Drive/P").getInt(0));
+
+        reload("drive.yaml", "Drive:\n  P: 11\n  I: 20\n  D: 3\n");
+        assertCounts(2, 1, 2, 0);
+
+        reload("elevator.yaml", "Elevator:\n  P: 5\n");
+        assertCounts(2, 1, 2, 1);
+    }
+
+    @Test
+    public void testNoOpReloadsDoNotFire() throws IOException {
+        reload("drive.yaml", "Drive:\n  P: 1\n  I: 2\n  D: 3\n"); // Rewritten with the same content
+        reload("drive.yaml", "Drive:\n  I: 2\n  P: 1\n  D: 3 # Reordered and commented\n");
+        manager.reload(Collections.emptySet());
+        manager.reload(Collections.singleton(rootFolder.resolve("elevator.yaml").toAbsolutePath()));
+        assertCounts(0, 0, 0, 0);
+    }
+
+    @Test
+    public void testShadowedChangesDoNotFire() throws IOException {
+        reload("drive.yaml", "Drive:\n  P: 1\n  I: 2\n  D: 4\n"); // D is overridden by ferb.yaml
+        assertCounts(0, 0, 0, 0);
+        assertEquals(30, manager.getEntry("Drive/D").getInt(0));
+
+        reload("ferb.yaml", "Drive:\n  D: 30\n  P: 1\n"); // Overrides P with the value it already has
+        assertCounts(0, 0, 0, 0);
+
+        reload("ferb.yaml", "Drive:\n  P: 1\n"); // Removing the override of D exposes drive.yaml's value
+        assertCounts(0, 0, 1, 0);
+        assertEquals(4, manager.getEntry("Drive/D").getInt(0));
+    }
+
+    @Test
+    public void testRemovedAndTypeChangedValuesFire() throws IOException {
+        reload("drive.yaml", "Drive:\n  I: 2\n  D: 3\n");
+        assertCounts(1, 0, 1, 0);
+        assertEquals(-1, manager.getEntry("Drive/P").getInt(-1));
+
+        reload("drive.yaml", "Drive:\n  P: 1\n  I: 2.0\n  D: 3\n"); // P added back, I changed from an int to a double
+        assertCounts(2, 1, 2, 0);
+    }
+
+    @Test
+    public void testDeletedFileFires() throws IOException {
+        Path elevatorFile = rootFolder.resolve("elevator.yaml");
+        Files.delete(elevatorFile);
+        manager.reload(Collections.singleton(elevatorFile.toAbsolutePath()));
+        assertCounts(0, 0, 0, 1);
+        assertEquals(-1, manager.getEntry("Elevator/P").getInt(-1));
+    }
+
+    @Test
+    public void testExecutorListenerRunsOnceForTheLatestGeneration() throws IOException {
+        List<Runnable> queued = new ArrayList<>();
+        List<Integer> seen = new ArrayList<>();
+        YamlConfigEntry entry = manager.getEntry("Drive/P");
+        entry.registerListener(false, queued::add, changed -> seen.add(changed.getInt(-1)));
+
+        reload("drive.yaml", "Drive:\n  P: 10\n  I: 2\n  D: 3\n");
+        reload("drive.yaml", "Drive:\n  P: 11\n  I: 2\n  D: 3\n");
+        reload("drive.yaml", "Drive:\n  P: 12\n  I: 2\n  D: 3\n");
+        assertEquals(1, queued.size()); // Queued once, the later generations are folded into it
+        assertTrue(seen.isEmpty());
+        runQueued(queued);
+        assertEquals(List.of(12), seen);
+
+        ListenerStats stats = statsOf("Drive/P", true);
+        assertFalse(stats.isPrefix());
+        assertEquals(1, stats.getRunCount());
+        assertEquals(2, stats.getCoalescedCount());
+        assertEquals(manager.getGeneration(), stats.getLastGeneration());
+        assertTrue(stats.getMaxNanos() >= stats.getLastNanos() && stats.getTotalNanos() >= stats.getMaxNanos());
+
+        reload("drive.yaml", "Drive:\n  P: 13\n  I: 2\n  D: 3\n");
+        runQueued(queued);
+        assertEquals(List.of(12, 13), seen);
+        assertEquals(2, statsOf("Drive/P", true).getRunCount());
+    }
+
+    @Test
+    public void testGenerationPublishedDuringARunQueuesAnother() {
+        List<Runnable> queued = new ArrayList<>();
+        List<Integer> seen = new ArrayList<>();
+        manager.getPrefix("Drive").registerPrefixListener(false, queued::add, prefix -> {
+            int p = prefix.pin().getInt("P", -1);
+            seen.add(p);
+            if (p == 10) {
+                manager.setOverrides(Collections.singletonMap("Drive/P", 20)); // While the listener runs
+            }
+        });
+        manager.setOverrides(Collections.singletonMap("Drive/P", 10));
+        runQueued(queued);
+        assertEquals(List.of(10, 20), seen);
+        assertEquals(0, statsOf("Drive", true).getCoalescedCount());
+    }
+
+    @Test
+    public void testInlineListenerStats() throws IOException {
+        reload("drive.yaml", "Drive:\n  P: 10\n  I: 2\n  D: 3\n");
+        reload("drive.yaml", "Drive:\n  P: 11\n  I: 2\n  D: 3\n");
+
+        List<ListenerStats> stats = manager.getListenerStats();
+        assertEquals(List.of("Drive/P", "Drive/I", "Drive", "Elevator"),
+            stats.stream().map(ListenerStats::getPath).collect(Collectors.toList())); // Registration order
+        ListenerStats drivePrefix = stats.get(2);
+        assertTrue(drivePrefix.isPrefix());
+        assertFalse(drivePrefix.isAsync());
+        assertEquals(2, drivePrefix.getRunCount()); // The run on registration is not dispatched
+        assertEquals(0, drivePrefix.getCoalescedCount());
+        assertEquals(manager.getGeneration(), drivePrefix.getLastGeneration());
+    }
+
+    /**
+     * Runs the queued listener tasks, and any they queue, on the calling thread.
+     */
+    private static void runQueued(List<Runnable> queued) {
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+    }
+
+    private ListenerStats statsOf(String path, boolean async) {
+        return manager.getListenerStats().stream()
+            .filter(stats -> stats.getPath().equals(path) && stats.isAsync() == async)
+            .findFirst().orElseThrow();
+    }
+
+    private void write(String file, String content) throws IOException {
+        Files.write(rootFolder.resolve(file), content.getBytes());
+    }
+
+    private void reload(String file, String content) throws IOException {
+        write(file, content);
+        manager.reload(Collections.singleton(rootFolder.resolve(file).toAbsolutePath()));
+    }
+
+    private void resetCounts() {
+        driveP.set(0);
+        driveI.set(0);
+        drive.set(0);
+        elevator.set(0);
+    }
+
+    private void assertCounts(int drivePCount, int driveICount, int driveCount, int elevatorCount) {
+        assertEquals(drivePCount, driveP.get(), "Drive/P listener");
+        assertEquals(driveICount, driveI.get(), "Drive/I listener");
+        assertEquals(driveCount, drive.get(), "Drive prefix listener");
+        assertEquals(elevatorCount, elevator.get(), "Elevator prefix listener");
+    }
+}
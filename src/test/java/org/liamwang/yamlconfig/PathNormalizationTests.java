@@ -0,0 +1,61 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PathNormalizationTests {
+
+    @Test
+    public void testNormalizePathStandard() {
+        assertEquals("P", YamlConfigManager.normalizePathStandard("P/////"));
+        assertEquals("P", YamlConfigManager.normalizePathStandard("P"));
+        assertEquals("DriveTrain/VelocityPID/P", YamlConfigManager.normalizePathStandard("/DriveTrain//VelocityPID/P/////"));
+        assertEquals("DriveTrain/VelocityPID/P", YamlConfigManager.normalizePathStandard("DriveTrain/VelocityPID/P"));
+        assertEquals("", YamlConfigManager.normalizePathStandard(""));
+        assertEquals("", YamlConfigManager.normalizePathStandard("/"));
+        assertEquals("", YamlConfigManager.normalizePathStandard("/////"));
+    }
+
+    @Test
+    public void testNormalizePathOptions() {
+        assertEquals("/a/b", YamlConfigManager.normalizePath("a//b/", true, true));
+        assertEquals("/a/b", YamlConfigManager.normalizePath("///a/b", true, true));
+        assertEquals("/a/b/", YamlConfigManager.normalizePath("a//b//", true, false));
+        assertEquals("a/b/", YamlConfigManager.normalizePath("//a//b//", false, false));
+    }
+
+    @Test
+    public void testCanonicalIdCacheKeepsCachingOnceFull() {
+        for (int i = 0; i < PathNormalizer.MAX_CACHED_PATHS * 2; i++) {
+            PathNormalizer.canonicalId("Generated//Path/" + i);
+        }
+        String rawPath = "/Read//In/A/Loop/";
+        String id = PathNormalizer.canonicalId(rawPath);
+        assertTrue(PathNormalizer.isCached(rawPath));
+        assertSame(id, PathNormalizer.canonicalId(rawPath));
+        assertEquals("Read/In/A/Loop", id);
+    }
+
+    @Test
+    public void testOddPathsReadSameEntry(@TempDir Path rootFolder) throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"), "primary:\n- pid.yaml\n".getBytes());
+        Files.write(rootFolder.resolve("pid.yaml"), "DriveTrain:\n  VelocityPID:\n    P: 0.5\n".getBytes());
+        YamlConfigManager manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).build();
+        try {
+            YamlConfigPrefix prefix = manager.getPrefix("DriveTrain/VelocityPID");
+            assertEquals(0.5, prefix.getEntry("P/////").getAsDouble(0));
+            assertEquals(0.5, manager.getEntry("//DriveTrain//VelocityPID/P/").getAsDouble(0));
+            assertEquals(0.5, prefix.pin().getDouble("/P//", 0));
+            assertSame(prefix.getEntry("P/////").getPath(), manager.getEntry("DriveTrain/VelocityPID/P").getPath());
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ReloadSchedulerTests {
+
+    private static final Path A = Paths.get("a.yaml");
+    private static final Path B = Paths.get("b.yaml");
+    private static final Path C = Paths.get("c.yaml");
+
+    private final ManualExecutor executor = new ManualExecutor();
+    private final List<Set<Path>> reloads = new ArrayList<>();
+    private final List<Long> reloadTimes = new ArrayList<>(); // Milliseconds on the manual clock
+    private ReloadScheduler scheduler;
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testBurstIsCoalescedIntoOneReload() {
+        scheduler = newScheduler(200, 5000);
+        scheduler.fileChanged(A);
+        executor.advanceTo(50);
+        scheduler.fileChanged(B);
+        executor.advanceTo(100);
+        scheduler.fileChanged(A);
+
+        executor.advanceTo(299);
+        assertTrue(reloads.isEmpty());
+        executor.advanceTo(10_000);
+        assertEquals(List.of(Set.of(A, B)), reloads);
+        assertEquals(List.of(300L), reloadTimes); // Quiet period after the last event
+        assertEquals(1, scheduler.getReloadCount());
+        assertEquals(3, scheduler.getEventCount());
+        assertEquals(2, scheduler.getCoalescedEventCount());
+        assertEquals(300, scheduler.getLastReloadLatencyMillis());
+    }
+
+    @Test
+    public void testMaxLatencyBoundsSteadyBursts() {
+        scheduler = newScheduler(500, 1000);
+        for (long time = 0; time < 2500; time += 100) {
+            executor.advanceTo(time); // Runs a due reload before the event at the same time
+            scheduler.fileChanged(A); // Never quiet for the quiet period
+        }
+        executor.advanceTo(10_000);
+
+        // Each burst reloads once its first event is the max latency old, the last one once the events stop
+        assertEquals(List.of(1000L, 2000L, 2900L), reloadTimes);
+        assertEquals(900, scheduler.getLastReloadLatencyMillis());
+        assertEquals(25, scheduler.getEventCount());
+        assertEquals(22, scheduler.getCoalescedEventCount());
+    }
+
+    @Test
+    public void testEventDuringReloadSchedulesAnother() {
+        scheduler = newScheduler(50, 1000, changedFiles -> {
+            if (reloads.size() == 1) {
+                scheduler.fileChanged(C); // Arrives while the first reload runs
+            }
+        });
+        scheduler.fileChanged(A);
+        executor.advanceTo(99);
+        assertEquals(List.of(Set.of(A)), reloads);
+        executor.advanceTo(100);
+        assertEquals(List.of(Set.of(A), Set.of(C)), reloads);
+        assertEquals(List.of(50L, 100L), reloadTimes);
+    }
+
+    @Test
+    public void testFailedReloadDoesNotStopLaterReloads() {
+        scheduler = newScheduler(50, 1000, changedFiles -> {
+            if (changedFiles.contains(A)) {
+                throw new IllegalStateException("Reload failed");
+            }
+        });
+        scheduler.fileChanged(A);
+        executor.advanceTo(100);
+        scheduler.fileChanged(B);
+        executor.advanceTo(200);
+        assertEquals(List.of(Set.of(A), Set.of(B)), reloads);
+        assertEquals(2, scheduler.getReloadCount());
+    }
+
+    private ReloadScheduler newScheduler(long quietPeriodMillis, long maxLatencyMillis) {
+        return newScheduler(quietPeriodMillis, maxLatencyMillis, changedFiles -> {
+        });
+    }
+
+    /**
+     * Creates a scheduler on the manual executor and clock that records each reload before running the action.
+     */
+    private ReloadScheduler newScheduler(long quietPeriodMillis, long maxLatencyMillis, Consumer<Set<Path>> action) {
+        return new ReloadScheduler(executor, true, () -> executor.nowNanos, quietPeriodMillis, maxLatencyMillis, changedFiles -> {
+            reloads.add(changedFiles);
+            reloadTimes.add(TimeUnit.NANOSECONDS.toMillis(executor.nowNanos));
+            action.accept(changedFiles);
+        });
+    }
+
+    /**
+     * Runs submitted tasks inline and delayed tasks only when the test advances its clock, in deadline order.
+     */
+    private static final class ManualExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+        private final PriorityQueue<ManualTask> tasks = new PriorityQueue<>();
+        private long nowNanos;
+        private long sequence; // Orders tasks with the same deadline by submission
+        private boolean shutdown;
+
+        void advanceTo(long millis) {
+            long target = TimeUnit.MILLISECONDS.toNanos(millis);
+            while (!tasks.isEmpty() && tasks.peek().deadlineNanos <= target) {
+                ManualTask task = tasks.poll();
+                nowNanos = Math.max(nowNanos, task.deadlineNanos);
+                if (!task.cancelled) {
+                    task.done = true;
+                    task.command.run();
+                }
+            }
+            nowNanos = Math.max(nowNanos, target);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            ManualTask task = new ManualTask(command, nowNanos + unit.toNanos(delay), sequence++);
+            tasks.add(task);
+            return task;
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            tasks.clear();
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+
+        private final class ManualTask implements ScheduledFuture<Object> {
+
+            private final Runnable command;
+            private final long deadlineNanos;
+            private final long order;
+            private boolean cancelled;
+            private boolean done;
+
+            private ManualTask(Runnable command, long deadlineNanos, long order) {
+                this.command = command;
+                this.deadlineNanos = deadlineNanos;
+                this.order = order;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(deadlineNanos - nowNanos, TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                ManualTask task = (ManualTask) other;
+                int byDeadline = Long.compare(deadlineNanos, task.deadlineNanos);
+                return byDeadline != 0 ? byDeadline : Long.compare(order, task.order);
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                cancelled = !done;
+                return cancelled;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done || cancelled;
+            }
+
+            @Override
+            public Object get() {
+                return null;
+            }
+
+            @Override
+            public Object get(long timeout, TimeUnit unit) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotFileTests {
+
+    @TempDir
+    Path rootFolder;
+    private Path file;
+
+    @BeforeEach
+    public void createFolder() throws IOException {
+        file = rootFolder.resolve("config-snapshot.bin");
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0.5\n".getBytes());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        write();
+        SnapshotFile snapshot = SnapshotFile.read(file);
+        assertEquals("ferb", snapshot.getRobotName());
+        assertTrue(snapshot.isUpToDate(rootFolder));
+        Map<String, Object> values = snapshot.getValues().getValues();
+        assertEquals(values().keySet(), values.keySet());
+        values().forEach((path, value) -> assertTrue(Objects.deepEquals(value, values.get(path)), path));
+
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0.6\n".getBytes());
+        assertFalse(snapshot.isUpToDate(rootFolder));
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0.5\n".getBytes());
+        Files.write(rootFolder.resolve("ferb-tuned.yaml"), "Drive/P: 1\n".getBytes());
+        assertFalse(snapshot.isUpToDate(rootFolder));
+    }
+
+    @Test
+    public void testTruncatedFilesAreRejected() throws IOException {
+        write();
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> SnapshotFile.read(file), "length " + length);
+        }
+    }
+
+    @Test
+    public void testCorruptLengthsAreRejected() throws IOException {
+        write();
+        byte[] bytes = Files.readAllBytes(file);
+        for (int corruptLength : new int[]{-5, -1, Integer.MAX_VALUE, 1 << 20}) {
+            for (int offset = 0; offset + Integer.BYTES <= bytes.length; offset++) {
+                byte[] corrupt = bytes.clone();
+                ByteBuffer.wrap(corrupt).putInt(offset, corruptLength);
+                Files.write(file, corrupt);
+                try {
+                    SnapshotFile.read(file); // Some offsets hold values rather than lengths and still decode
+                } catch (IOException e) {
+                    // Treated as no snapshot
+                }
+            }
+        }
+
+        ByteBuffer.wrap(bytes).putInt(Integer.BYTES * 2, -5); // Robot name length
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+    }
+
+    @Test
+    public void testUnknownTypeIsRejected() throws IOException {
+        new SnapshotFile("ferb", List.of(), new ConfigSnapshot(0, Map.of("Drive/P", 1))).write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - Integer.BYTES - 1] = 42; // Type tag of the only value
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+    }
+
+    @Test
+    public void testManagerOnlyWritesChangedSnapshots() throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"), "primary:\n- pid.yaml\n".getBytes());
+        YamlConfigManager manager = YamlConfigManager.builder().rootFolder(rootFolder).robotName("ferb").watch(false).build();
+        try {
+            manager.flushSnapshotFile();
+            assertEquals(0.5, SnapshotFile.read(file).getValues().get("Drive/P"));
+
+            Files.delete(file);
+            manager.reload(Collections.singleton(rootFolder.resolve("pid.yaml").toAbsolutePath())); // Changes nothing
+            manager.flushSnapshotFile();
+            assertFalse(Files.exists(file));
+
+            Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0.6\n".getBytes());
+            manager.reload(Collections.singleton(rootFolder.resolve("pid.yaml").toAbsolutePath()));
+        } finally {
+            manager.shutdown(); // Writes the queued snapshot
+        }
+        SnapshotFile snapshot = SnapshotFile.read(file);
+        assertEquals(0.6, snapshot.getValues().get("Drive/P"));
+        assertTrue(snapshot.isUpToDate(rootFolder));
+    }
+
+    private void write() throws IOException {
+        byte[] content = Files.readAllBytes(rootFolder.resolve("pid.yaml"));
+        List<SnapshotFile.Source> sources = List.of(
+            new SnapshotFile.Source("pid.yaml", content.length, ConfigFile.newDigest().digest(content)),
+            SnapshotFile.Source.missing("ferb-tuned.yaml"));
+        new SnapshotFile("ferb", sources, new ConfigSnapshot(0, values())).write(file);
+    }
+
+    private static Map<String, Object> values() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("Drive/P", 0.5);
+        values.put("Drive/F", 2);
+        values.put("Drive/Ticks", 1L << 40);
+        values.put("Drive/Big", new BigInteger("99999999999999999999"));
+        values.put("Drive/Enabled", true);
+        values.put("Drive/Name", "left");
+        values.put("Drive/Gains", new double[]{1, 2, 3});
+        values.put("Drive/Table", new double[][]{{0, 1}, {1, 2}});
+        return values;
+    }
+}
@@ -0,0 +1,69 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.CharBuffer;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class TopLevelKeyScannerTests {
+
+    @Test
+    public void testBlockMappingKeys() {
+        assertEquals(Set.of("Drive", "Elevator", "Arm", "Shooter", "Intake"), scan("%YAML 1.1\n"
+            + "---\n"
+            + "# Drive gains\n"
+            + "Drive:\n"
+            + "  P: 1\n"
+            + "  Nested:\n"
+            + "    Deep: 2\n"
+            + "\n"
+            + "Elevator/P: 3\n"
+            + "/Arm//Wrist/: 4\n"
+            + "\"Shooter\": 5\n"
+            + "'Intake': [1, 2]\n"
+            + "Drive:  # Repeated keys count once\n"
+            + "...\n"));
+    }
+
+    @Test
+    public void testLineEndingsAndEmptyFiles() {
+        assertEquals(Set.of("Drive", "Arm"), scan("Drive:\r\n  P: 1\r\nArm: 2\r\n"));
+        assertEquals(Set.of("Drive"), scan("Drive: 1")); // No final newline
+        assertEquals(Set.of(), scan(""));
+        assertEquals(Set.of(), scan("# Only a comment\n"));
+    }
+
+    @Test
+    public void testReadsFromTheBufferPosition() {
+        CharBuffer chars = CharBuffer.wrap("- skipped\nDrive: 1\n");
+        chars.position(10);
+        assertEquals(Set.of("Drive"), TopLevelKeyScanner.scan(chars));
+        assertEquals(10, chars.position()); // Not consumed
+    }
+
+    @Test
+    public void testGivesUpWhenUnsure() {
+        String[] undeterminable = {
+            "{Drive: {P: 1}}\n", // Flow root
+            "- 1\n- 2\n", // List root
+            "base: &base\n  P: 1\n<<: *base\n", // Merge key
+            "&anchor Drive: 1\n",
+            "? [complex, key]\n: 1\n",
+            "Drive: 1\nplain scalar continued\n",
+            "\"Dri\\u0076e\": 1\n", // Escaped quoted key
+            "\"Drive\n  P\": 1\n", // Multi-line quoted key
+            "'Drive' : 1\n", // Quoted key not directly followed by the colon
+            "--- Drive: 1\n", // Content after a document marker
+            "/: 1\n", // No first segment
+        };
+        for (String yaml : undeterminable) {
+            assertNull(scan(yaml), yaml);
+        }
+    }
+
+    private static Set<String> scan(String yaml) {
+        return TopLevelKeyScanner.scan(CharBuffer.wrap(yaml));
+    }
+}
@@ -0,0 +1,135 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class ValueTrieTests {
+
+    // Every pair of "Aa" and "BB" has the same hash code, so these keys collide on all 32 bits
+    private static final String[] COLLIDING_KEYS = {"AaAaAa", "AaAaBB", "AaBBAa", "AaBBBB", "BBAaAa", "BBAaBB", "BBBBAa", "BBBBBB"};
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        List<String> keys = keys(random);
+        ValueTrie trie = ValueTrie.EMPTY;
+        Map<String, ConfigValue> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            if (random.nextInt(3) == 0) {
+                trie = trie.remove(key);
+                expected.remove(key);
+            } else {
+                ConfigValue value = ConfigValue.of(random.nextInt(4));
+                trie = trie.put(key, value);
+                expected.put(key, value);
+            }
+            assertEquals(expected.size(), trie.size());
+            assertSame(expected.get(key), trie.get(key));
+        }
+        assertContents(expected, trie);
+    }
+
+    @Test
+    public void testCollisions() {
+        ValueTrie trie = ValueTrie.EMPTY;
+        Map<String, ConfigValue> expected = new HashMap<>();
+        for (String key : COLLIDING_KEYS) {
+            ConfigValue value = ConfigValue.of(key);
+            trie = trie.put(key, value);
+            expected.put(key, value);
+            assertContents(expected, trie);
+        }
+        ConfigValue replacement = ConfigValue.of(1);
+        trie = trie.put(COLLIDING_KEYS[3], replacement);
+        expected.put(COLLIDING_KEYS[3], replacement);
+        assertContents(expected, trie);
+
+        assertSame(trie, trie.remove("CCCCCC")); // Not present
+        assertSame(trie, trie.put(COLLIDING_KEYS[3], replacement)); // Same instance
+        for (String key : COLLIDING_KEYS) {
+            ValueTrie previous = trie;
+            trie = trie.remove(key);
+            expected.remove(key);
+            assertContents(expected, trie);
+            assertEquals(Set.of(key), diff(trie, previous));
+            assertEquals(Set.of(key), diff(previous, trie));
+        }
+        assertEquals(0, trie.size());
+    }
+
+    @Test
+    public void testDiffMatchesHashMap() {
+        Random random = new Random(7);
+        List<String> keys = keys(random);
+        ValueTrie trie = ValueTrie.EMPTY;
+        Map<String, ConfigValue> values = new HashMap<>();
+        for (int batch = 0; batch < 200; batch++) {
+            ValueTrie previous = trie;
+            Map<String, ConfigValue> previousValues = new HashMap<>(values);
+            int batchSize = batch % 10 == 0 ? 500 : random.nextInt(8);
+            for (int i = 0; i < batchSize; i++) {
+                String key = keys.get(random.nextInt(keys.size()));
+                if (random.nextInt(4) == 0) {
+                    trie = trie.remove(key);
+                    values.remove(key);
+                } else {
+                    ConfigValue value = ConfigValue.of(random.nextInt(3)); // Often equal to the value it replaces
+                    trie = trie.put(key, value);
+                    values.put(key, value);
+                }
+            }
+
+            Set<String> expected = new HashSet<>(values.keySet());
+            expected.addAll(previousValues.keySet());
+            expected.removeIf(key -> values.containsKey(key) && previousValues.containsKey(key)
+                && values.get(key).sameValue(previousValues.get(key)));
+            assertEquals(expected, diff(trie, previous));
+            assertEquals(expected, diff(previous, trie));
+        }
+    }
+
+    @Test
+    public void testVersionsAreUnaffectedByUpdates() {
+        ValueTrie first = ValueTrie.EMPTY.put("a", ConfigValue.of(1)).put("b", ConfigValue.of(2));
+        ValueTrie second = first.put("a", ConfigValue.of(3)).remove("b").put("c", ConfigValue.of(4));
+        assertEquals(1, first.get("a").toObject());
+        assertEquals(2, first.get("b").toObject());
+        assertNull(first.get("c"));
+        assertEquals(3, second.get("a").toObject());
+        assertNull(second.get("b"));
+        assertEquals(Set.of("a", "b", "c"), diff(second, first));
+    }
+
+    private static List<String> keys(Random random) {
+        List<String> keys = new ArrayList<>(List.of(COLLIDING_KEYS));
+        for (int i = 0; i < 2000; i++) {
+            keys.add(("Subsystem" + random.nextInt(50) + "/Value" + i).intern());
+        }
+        return keys;
+    }
+
+    private static Set<String> diff(ValueTrie trie, ValueTrie previous) {
+        Set<String> changedPaths = new HashSet<>();
+        trie.diff(previous, changedPath -> assertEquals(true, changedPaths.add(changedPath), changedPath));
+        return changedPaths;
+    }
+
+    private static void assertContents(Map<String, ConfigValue> expected, ValueTrie trie) {
+        assertEquals(expected.size(), trie.size());
+        Map<String, ConfigValue> actual = new HashMap<>();
+        trie.forEach(actual::put);
+        assertEquals(expected, actual);
+        expected.forEach((key, value) -> assertSame(value, trie.get(key)));
+    }
+}
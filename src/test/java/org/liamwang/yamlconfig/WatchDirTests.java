@@ -0,0 +1,139 @@
+package org.liamwang.yamlconfig;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WatchDirTests {
+
+    @TempDir
+    Path rootFolder;
+    private ScheduledExecutorService executor;
+    private CountDownLatch executorBlocked;
+    private YamlConfigContext context;
+    private WatchDir watchDir;
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void createFolder() throws IOException {
+        Files.createDirectories(rootFolder.resolve("ferb"));
+        Files.write(rootFolder.resolve("drive.yaml"), "Drive:\n  P: 1\n".getBytes());
+        Files.write(rootFolder.resolve("elevator.yaml"), "Elevator:\n  P: 1\n".getBytes());
+        Files.write(rootFolder.resolve("ferb/ferb-drive.yaml"), "Drive:\n  P: 2\n".getBytes());
+        Files.write(rootFolder.resolve("ferb/ferb-elevator.yaml"), "Elevator:\n  P: 2\n".getBytes());
+
+        // Events are injected by the tests, so keep the context from polling the real watch service
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executorBlocked = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                executorBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        context = new YamlConfigContext(executor);
+        watchDir = new WatchDir(context, rootFolder, true, (kind, path) ->
+            events.add(kind.name() + " " + rootFolder.relativize(path).toString().replace(File.separatorChar, '/')));
+    }
+
+    @AfterEach
+    public void close() throws IOException {
+        watchDir.close();
+        context.close();
+        executorBlocked.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testOverflowRescansTree() throws IOException {
+        Path drive = rootFolder.resolve("drive.yaml");
+        Files.write(drive, "Drive:\n  P: 3\n".getBytes());
+        Files.setLastModifiedTime(drive, FileTime.fromMillis(Files.getLastModifiedTime(drive).toMillis() + 10_000));
+        Files.delete(rootFolder.resolve("elevator.yaml"));
+        Files.write(rootFolder.resolve("ferb/ferb-winch.yaml"), "Winch:\n  P: 1\n".getBytes());
+        Files.createDirectories(rootFolder.resolve("pandora"));
+        Files.write(rootFolder.resolve("pandora/pandora-drive.yaml"), "Drive:\n  P: 4\n".getBytes());
+
+        watchDir.processEvents(context.register(rootFolder, watchDir), List.of(event(OVERFLOW, null)));
+        Collections.sort(events);
+        assertEquals(List.of("ENTRY_CREATE ferb/ferb-winch.yaml", "ENTRY_CREATE pandora/pandora-drive.yaml",
+            "ENTRY_DELETE elevator.yaml", "ENTRY_MODIFY drive.yaml"), events);
+
+        events.clear(); // Files found by the rescan are known, later events about them are reported normally
+        Files.delete(rootFolder.resolve("pandora/pandora-drive.yaml"));
+        watchDir.processEvents(context.register(rootFolder.resolve("pandora"), watchDir),
+            List.of(event(ENTRY_DELETE, Path.of("pandora-drive.yaml"))));
+        assertEquals(List.of("ENTRY_DELETE pandora/pandora-drive.yaml"), events);
+    }
+
+    @Test
+    public void testOverflowWithoutChangesReportsNothing() throws IOException {
+        watchDir.processEvents(context.register(rootFolder, watchDir), List.of(event(OVERFLOW, null)));
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    public void testDeletedDirectoryReportsEachFile() throws IOException {
+        Files.delete(rootFolder.resolve("ferb/ferb-drive.yaml"));
+        Files.delete(rootFolder.resolve("ferb/ferb-elevator.yaml"));
+        Files.delete(rootFolder.resolve("ferb"));
+        watchDir.processEvents(context.register(rootFolder, watchDir), List.of(event(ENTRY_DELETE, Path.of("ferb"))));
+        Collections.sort(events);
+        assertEquals(List.of("ENTRY_DELETE ferb/ferb-drive.yaml", "ENTRY_DELETE ferb/ferb-elevator.yaml"), events);
+
+        events.clear();
+        watchDir.processEvents(context.register(rootFolder, watchDir), List.of(event(ENTRY_DELETE, Path.of("ferb"))));
+        assertEquals(List.of(), events); // Already forgotten
+    }
+
+    @Test
+    public void testCreatedDirectoryReportsFilesAlreadyInIt() throws IOException {
+        Files.createDirectories(rootFolder.resolve("pandora"));
+        Files.write(rootFolder.resolve("pandora/pandora-drive.yaml"), "Drive:\n  P: 4\n".getBytes());
+        watchDir.processEvents(context.register(rootFolder, watchDir), List.of(event(ENTRY_CREATE, Path.of("pandora"))));
+        assertEquals(List.of("ENTRY_CREATE pandora/pandora-drive.yaml"), events);
+
+        events.clear();
+        watchDir.processEvents(context.register(rootFolder, watchDir), List.of(event(ENTRY_MODIFY, Path.of("drive.yaml"))));
+        assertEquals(List.of("ENTRY_MODIFY drive.yaml"), events);
+    }
+
+    private static <T> WatchEvent<T> event(WatchEvent.Kind<T> kind, T context) {
+        return new WatchEvent<T>() {
+            @Override
+            public Kind<T> kind() {
+                return kind;
+            }
+
+            @Override
+            public int count() {
+                return 1;
+            }
+
+            @Override
+            public T context() {
+                return context;
+            }
+        };
+    }
+}
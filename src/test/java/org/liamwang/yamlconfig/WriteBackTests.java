@@ -0,0 +1,137 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WriteBackTests {
+
+    private static final String OVERRIDE_FILE = "# Tuned at the last competition\n"
+        + "base: &base\n"
+        + "  P: 0.1\n"
+        + "  I: 0.2\n"
+        + "Drive:\n"
+        + "  <<: *base\n"
+        + "  D: 0.3 # Keep low\n"
+        + "  names: [left, right]\n";
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigManager manager;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"), "primary:\n- pid.yaml\noverride:\n  ferb:\n  - ferb.yaml\n".getBytes());
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0.5\n  F: 1\n".getBytes());
+        Files.write(rootFolder.resolve("ferb.yaml"), OVERRIDE_FILE.getBytes());
+    }
+
+    @AfterEach
+    public void shutdown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    private YamlConfigManager build() {
+        return YamlConfigManager.builder().rootFolder(rootFolder).robotName("ferb").watch(false).build();
+    }
+
+    @Test
+    public void testSetLeavesConfigFilesUntouched() throws IOException {
+        manager = build();
+        YamlConfigEntry entry = manager.getEntry("Drive/D");
+        long generation = manager.getGeneration();
+        assertEquals(generation + 1, entry.set(0.7));
+        assertEquals(0.7, entry.getAsDouble(0));
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("F", 2);
+        values.put("Table", new double[][]{{0, 1}, {1, 2}});
+        assertEquals(generation + 2, manager.getPrefix("Drive").set(values));
+        assertEquals(2, manager.getEntry("Drive/F").getInt(0));
+        assertEquals(1.5, manager.getEntry("Drive/Table").interpolate(0.5, 0));
+
+        manager.shutdown(); // Writes the tuned values file
+        assertEquals(OVERRIDE_FILE, new String(Files.readAllBytes(rootFolder.resolve("ferb.yaml"))));
+        assertEquals("Drive:\n  P: 0.5\n  F: 1\n", new String(Files.readAllBytes(rootFolder.resolve("pid.yaml"))));
+        assertTrue(Files.exists(rootFolder.resolve("ferb-tuned.yaml")));
+
+        manager = build();
+        assertEquals(0.7, manager.getEntry("Drive/D").getAsDouble(0));
+        assertEquals(2, manager.getEntry("Drive/F").getInt(0));
+        manager.getEntry("Drive/D").remove();
+        assertEquals(0.3, manager.getEntry("Drive/D").getAsDouble(0));
+    }
+
+    @Test
+    public void testSetAfterRollbackKeepsIt() throws IOException {
+        manager = build();
+        long first = manager.getGeneration();
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0.5\n  F: 2\n".getBytes());
+        manager.reload(Collections.singleton(rootFolder.resolve("pid.yaml").toAbsolutePath()));
+        manager.rollback(first);
+
+        manager.getEntry("Drive/D").set(0.7);
+        assertEquals(0.7, manager.getEntry("Drive/D").getAsDouble(0));
+        assertEquals(1, manager.getEntry("Drive/F").getInt(0)); // Still rolled back
+        manager.getEntry("Drive/D").remove();
+        assertEquals(0.3, manager.getEntry("Drive/D").getAsDouble(0));
+        assertEquals(1, manager.getEntry("Drive/F").getInt(0));
+    }
+
+    @Test
+    public void testTunedFileIsReadWhenTheConfigLoads() throws IOException {
+        Files.write(rootFolder.resolve("ferb-tuned.yaml"), "Drive/I: 0.4\n".getBytes());
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).robotName("ferb").watch(false).lazyLoading(true).build();
+        Files.write(rootFolder.resolve("ferb-tuned.yaml"), "Drive/P: 0.2\n  - oops: [\n".getBytes()); // Not read by set
+        manager.getEntry("Drive/D").set(0.7);
+        assertEquals(0.4, manager.getEntry("Drive/I").getAsDouble(0));
+        assertEquals(0.7, manager.getEntry("Drive/D").getAsDouble(0));
+        manager.shutdown();
+        assertEquals("Drive/D: 0.7\nDrive/I: 0.4\n", new String(Files.readAllBytes(rootFolder.resolve("ferb-tuned.yaml"))));
+    }
+
+    @Test
+    public void testSetWithUnparsableOverrideFile() throws IOException {
+        String broken = "Drive:\n  P: 0.2\n   D: 0.3\n"; // Indentation typo
+        Files.write(rootFolder.resolve("ferb.yaml"), broken.getBytes());
+        manager = build();
+        manager.getEntry("Drive/P").set(5);
+        assertEquals(5, manager.getEntry("Drive/P").getInt(0));
+        manager.shutdown();
+        assertEquals(broken, new String(Files.readAllBytes(rootFolder.resolve("ferb.yaml"))));
+    }
+
+    @Test
+    public void testSetRefusesToOverwriteUnparsableTunedFile() throws IOException {
+        byte[] broken = "Drive/P: 0.2\n  - oops: [\n".getBytes();
+        Files.write(rootFolder.resolve("ferb-tuned.yaml"), broken);
+        manager = build();
+        long generation = manager.getGeneration();
+        assertThrows(IllegalStateException.class, () -> manager.getEntry("Drive/P").set(5));
+        assertEquals(generation, manager.getGeneration());
+        manager.shutdown();
+        assertArrayEquals(broken, Files.readAllBytes(rootFolder.resolve("ferb-tuned.yaml")));
+    }
+
+    @Test
+    public void testRejectsJaggedTables() {
+        manager = build();
+        assertThrows(IllegalArgumentException.class, () -> manager.getEntry("Drive/Table").set(new double[][]{{0, 1}, {1}}));
+        assertFalse(Files.exists(rootFolder.resolve("ferb-tuned.yaml")));
+    }
+}
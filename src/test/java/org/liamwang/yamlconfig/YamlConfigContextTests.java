@@ -0,0 +1,91 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class YamlConfigContextTests {
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigContext context;
+    private YamlConfigManager ferb;
+    private YamlConfigManager pandora;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        write("config-meta.yaml", "primary:\n- drive.yaml\noverride:\n  ferb:\n  - ferb.yaml\n  pandora:\n  - pandora.yaml\n");
+        write("drive.yaml", "Drive:\n  P: 1\n  I: 2\n");
+        write("ferb.yaml", "Drive:\n  P: 10\n");
+        write("pandora.yaml", "Drive:\n  P: 20\n");
+        context = new YamlConfigContext(2);
+    }
+
+    @AfterEach
+    public void shutdown() throws IOException {
+        if (ferb != null) {
+            ferb.shutdown();
+        }
+        if (pandora != null) {
+            pandora.shutdown();
+        }
+        context.close();
+    }
+
+    @Test
+    public void testManagersShareTheContextExecutor() throws IOException, InterruptedException {
+        ferb = build("ferb", false);
+        pandora = build("pandora", false);
+        assertSame(context.getExecutor(), ferb.getReloadScheduler().getExecutor());
+        assertSame(context.getExecutor(), pandora.getReloadScheduler().getExecutor());
+        assertEquals(10, ferb.getEntry("Drive/P").getInt(-1));
+        assertEquals(20, pandora.getEntry("Drive/P").getInt(-1));
+
+        ferb.shutdown(); // Leaves the shared executor running for the other manager
+        ferb = null;
+        CountDownLatch reloaded = new CountDownLatch(1);
+        pandora.getEntry("Drive/I").registerListener(false, entry -> reloaded.countDown());
+        write("drive.yaml", "Drive:\n  P: 1\n  I: 3\n");
+        pandora.getReloadScheduler().fileChanged(rootFolder.resolve("drive.yaml").toAbsolutePath());
+        assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+        assertEquals(3, pandora.getEntry("Drive/I").getInt(-1));
+    }
+
+    @Test
+    public void testOneFolderWatchedForBothManagers() throws IOException, InterruptedException {
+        ferb = build("ferb", true);
+        pandora = build("pandora", true);
+        ferb.setReloadTiming(10, 100);
+        pandora.setReloadTiming(10, 100);
+        CountDownLatch reloaded = new CountDownLatch(2);
+        ferb.getEntry("Drive/I").registerListener(false, entry -> reloaded.countDown());
+        pandora.getEntry("Drive/I").registerListener(false, entry -> reloaded.countDown());
+
+        write("drive.yaml", "Drive:\n  P: 1\n  I: 4\n");
+        assertTrue(reloaded.await(10, TimeUnit.SECONDS), "both managers reloaded");
+        assertEquals(4, ferb.getEntry("Drive/I").getInt(-1));
+        assertEquals(4, pandora.getEntry("Drive/I").getInt(-1));
+        assertEquals(10, ferb.getEntry("Drive/P").getInt(-1));
+        assertEquals(20, pandora.getEntry("Drive/P").getInt(-1));
+    }
+
+    private YamlConfigManager build(String robotName, boolean watch) {
+        return YamlConfigManager.builder().rootFolder(rootFolder).robotName(robotName).context(context).watch(watch)
+            .snapshotFileName(robotName + "-snapshot.bin").build();
+    }
+
+    private void write(String file, String content) throws IOException {
+        Files.write(rootFolder.resolve(file), content.getBytes());
+    }
+}
@@ -0,0 +1,98 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class YamlConfigPrefixTests {
+
+    @TempDir
+    Path rootFolder;
+    private YamlConfigManager manager;
+    private YamlConfigPrefix drive;
+
+    @BeforeEach
+    public void createConfig() throws IOException {
+        Files.write(rootFolder.resolve("config-meta.yaml"), "primary:\n- pid.yaml\n".getBytes());
+        Files.write(rootFolder.resolve("pid.yaml"), "Drive:\n  P: 0\n  I: 0\n  Name: left\n".getBytes());
+        manager = YamlConfigManager.builder().rootFolder(rootFolder).watch(false).build();
+        drive = manager.getPrefix("Drive");
+    }
+
+    @AfterEach
+    public void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testPinnedViewKeepsItsGeneration() {
+        YamlConfigPrefix.View view = drive.pin();
+        long generation = manager.setOverrides(Map.of("Drive/P", 1, "Drive/I", 2));
+
+        assertEquals(generation - 1, view.getGeneration());
+        assertEquals(0, view.getDouble("P", -1));
+        assertEquals(0, view.getInt("I", -1));
+        YamlConfigPrefix.View newView = drive.pin();
+        assertEquals(generation, newView.getGeneration());
+        assertEquals(1, newView.getDouble("P", -1));
+        assertEquals(2, newView.getInt("I", -1));
+        assertEquals(0, drive.pinAsOf(generation - 1).getDouble("P", -1));
+    }
+
+    @Test
+    public void testReadIntoLeavesMissingKeysUnchanged() {
+        double[] gains = {-1, -1, -1, -1};
+        assertEquals(2, drive.readInto(gains, "P", "Missing", "I", "Name"));
+        assertArrayEquals(new double[]{0, -1, 0, -1}, gains);
+        assertThrows(IllegalArgumentException.class, () -> drive.readInto(new double[1], "P", "I"));
+    }
+
+    @Test
+    public void testReadsDuringWritesComeFromOneGeneration() throws InterruptedException {
+        AtomicBoolean done = new AtomicBoolean();
+        List<String> mismatches = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            double[] gains = new double[2];
+            while (!done.get()) {
+                drive.readInto(gains, "P", "I");
+                YamlConfigPrefix.View view = drive.pin();
+                double p = view.getDouble("P", -1);
+                double i = view.getDouble("I", -1);
+                if (gains[0] != gains[1] || p != i) {
+                    mismatches.add(gains[0] + " " + gains[1] + " " + p + " " + i);
+                }
+            }
+        });
+        reader.start();
+        for (int value = 1; value <= 5000; value++) {
+            manager.setOverrides(Map.of("Drive/P", value, "Drive/I", value)); // One generation per pair
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(List.of(), mismatches);
+    }
+
+    @Test
+    public void testListenerPinSeesBothValues() {
+        List<String> seen = new ArrayList<>();
+        drive.registerPrefixListener(false, prefix -> {
+            YamlConfigPrefix.View view = prefix.pin();
+            seen.add(view.getInt("P", -1) + " " + view.getInt("I", -1));
+        });
+        manager.setOverrides(Map.of("Drive/P", 1, "Drive/I", 1));
+        manager.setOverrides(Map.of("Drive/P", 2, "Drive/I", 2));
+        assertEquals(List.of("1 1", "2 2"), seen);
+    }
+}
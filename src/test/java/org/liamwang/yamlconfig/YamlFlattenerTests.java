@@ -0,0 +1,202 @@
+package org.liamwang.yamlconfig;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.Yaml;
+
+public class YamlFlattenerTests {
+
+    private final YamlFlattener flattener = new YamlFlattener();
+
+    @Test
+    public void testMatchesYamlLoadOnDeployConfig() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(Paths.get("deploy"))) {
+            files = paths.filter(path -> path.toString().endsWith(".yaml")).collect(Collectors.toList());
+        }
+        assertFalse(files.isEmpty());
+        for (Path file : files) {
+            assertMatchesYamlLoad(new String(Files.readAllBytes(file), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testMergeKeys() {
+        Map<String, Object> values = assertMatchesYamlLoad("base: &base\n"
+            + "  P: 0.1\n"
+            + "  I: 0.2\n"
+            + "extra: &extra\n"
+            + "  F: 3\n"
+            + "Drive:\n"
+            + "  <<: *base\n"
+            + "  I: 0.5\n"
+            + "Elevator:\n"
+            + "  <<: [*base, *extra]\n");
+        assertEquals(0.1, values.get("Drive/P"));
+        assertEquals(0.5, values.get("Drive/I"));
+        assertEquals(3, values.get("Elevator/F"));
+    }
+
+    @Test
+    public void testCollectionAliases() {
+        Map<String, Object> values = assertMatchesYamlLoad("Left:\n"
+            + "  PID: &pid {P: 1, D: 2}\n"
+            + "  Table: &table [[0, 1], [1, 2]]\n"
+            + "Right:\n"
+            + "  PID: *pid\n"
+            + "  Table: *table\n"
+            + "  Rows: [*table]\n");
+        assertEquals(2, values.get("Right/PID/D"));
+        assertArrayEquals(new double[][]{{0, 1}, {1, 2}}, (double[][]) values.get("Right/Table"));
+        assertFalse(values.containsKey("Right/Rows")); // A list of tables is not supported
+    }
+
+    @Test
+    public void testImplicitTypes() {
+        Map<String, Object> values = assertMatchesYamlLoad("Angle: 190:20:30\n"
+            + "Time: 1:30.5\n"
+            + "Date: 2001-12-14\n"
+            + "Hex: 0x1F\n"
+            + "Octal: 017\n"
+            + "Big: 99999999999999999999\n"
+            + "Flag: on\n"
+            + "Quoted: \"12\"\n"
+            + "Tagged: !!str 12\n"
+            + "Empty:\n");
+        assertEquals(685230, values.get("Angle"));
+        assertEquals(90.5, values.get("Time"));
+        assertFalse(values.containsKey("Date")); // Dates are not a supported type
+        assertFalse(values.containsKey("Empty"));
+    }
+
+    @Test
+    public void testPlainDocuments() {
+        Map<String, Object> values = assertMatchesYamlLoad("Drive:\n"
+            + "  P: &p 0.5\n"
+            + "  I: *p\n"
+            + "  Name: left/drive\n"
+            + "  Gains: [1, 2.5, -3]\n"
+            + "  Table: [[0, 1], [2, 3]]\n"
+            + "  Jagged: [[0, 1], [2]]\n"
+            + "  Names: [a, b]\n"
+            + "  Flags: {Enabled: yes, Inverted: false}\n"
+            + "/Elevator//Height/: 3\n");
+        assertEquals(0.5, values.get("Drive/I"));
+        assertTrue(values.containsKey("Elevator/Height"));
+        assertFalse(values.containsKey("Drive/Jagged"));
+        assertFalse(values.containsKey("Drive/Names"));
+    }
+
+    @Test
+    public void testTables() {
+        Map<String, Object> values = assertMatchesYamlLoad("Block:\n"
+            + "- - 0\n"
+            + "  - 1.5\n"
+            + "- - 2\n"
+            + "  - -3\n"
+            + "Mixed:\n"
+            + "- [0, 1]\n"
+            + "- - 2\n"
+            + "  - 3\n"
+            + "Wide: [[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]]\n"
+            + "Tall: [" + String.join(", ", Collections.nCopies(300, "[1, 2]")) + "]\n"
+            + "Ragged: [[0, 1], [2, 3, 4]]\n"
+            + "NumberThenRow: [1, [2]]\n"
+            + "RowThenNumber: [[1], 2]\n"
+            + "Nested: [[[1]]]\n"
+            + "Strings: [[0, a]]\n"
+            + "After: 4\n");
+        assertArrayEquals(new double[][]{{0, 1.5}, {2, -3}}, (double[][]) values.get("Block"));
+        assertArrayEquals(new double[][]{{0, 1}, {2, 3}}, (double[][]) values.get("Mixed"));
+        assertEquals(300, ((double[][]) values.get("Tall")).length);
+        for (String dropped : new String[]{"Ragged", "NumberThenRow", "RowThenNumber", "Nested", "Strings"}) {
+            assertFalse(values.containsKey(dropped), dropped);
+        }
+        assertEquals(4, values.get("After")); // Parsing continues after a dropped table
+    }
+
+    @Test
+    public void testTablesFromSeveralFlattens() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        flattener.flatten(CharBuffer.wrap("A: [[0, 1, 2], [3, 4, 5], [6, 7, 8]]\n"), values);
+        flattener.flatten(CharBuffer.wrap("B: [[9, 8]]\n"), values); // The reused row buffer must not leak into B
+        assertArrayEquals(new double[][]{{0, 1, 2}, {3, 4, 5}, {6, 7, 8}}, (double[][]) values.get("A"));
+        assertArrayEquals(new double[][]{{9, 8}}, (double[][]) values.get("B"));
+    }
+
+    @Test
+    public void testNonMapRoots() {
+        assertMatchesYamlLoad("");
+        assertMatchesYamlLoad("- 1\n- 2\n");
+    }
+
+    /**
+     * @return the flattened values, after checking that they match flattening the tree loaded by {@link Yaml#load}
+     */
+    private Map<String, Object> assertMatchesYamlLoad(String yaml) {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        Object root = new Yaml().load(yaml);
+        if (root instanceof Map) {
+            flattenLoaded("", (Map<?, ?>) root, expected);
+        }
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        flattener.flatten(CharBuffer.wrap(yaml), values);
+        assertEquals(expected.keySet(), values.keySet(), yaml);
+        expected.forEach((path, value) -> assertTrue(Objects.deepEquals(value, values.get(path)), path));
+        return values;
+    }
+
+    private static void flattenLoaded(String prefix, Map<?, ?> map, Map<String, Object> values) {
+        map.forEach((key, value) -> {
+            String path = YamlConfigManager.normalizePathStandard(prefix + YamlConfigManager.PATH_SEPARATOR + key);
+            if (value instanceof Map) {
+                flattenLoaded(path, (Map<?, ?>) value, values);
+            } else if (value instanceof List) {
+                Object array = toArray((List<?>) value);
+                if (array != null) {
+                    values.put(path, array);
+                }
+            } else if (YamlFlattener.isSupportedType(value)) {
+                values.put(path, value);
+            }
+        });
+    }
+
+    private static Object toArray(List<?> list) {
+        if (!list.stream().allMatch(element -> element instanceof List)) {
+            return toDoubles(list);
+        }
+        double[][] table = new double[list.size()][];
+        for (int row = 0; row < table.length; row++) {
+            table[row] = toDoubles((List<?>) list.get(row));
+            if (table[row] == null || table[row].length != table[0].length) {
+                return null;
+            }
+        }
+        return table;
+    }
+
+    private static double[] toDoubles(List<?> list) {
+        if (!list.stream().allMatch(element -> element instanceof Number)) {
+            return null;
+        }
+        return list.stream().mapToDouble(element -> ((Number) element).doubleValue()).toArray();
+    }
+}